@@ -2,28 +2,25 @@ package ai.jamerly.tiein.config;
 
 import ai.jamerly.tiein.dto.CompleteRequestParams;
 import ai.jamerly.tiein.dto.CompleteResult;
-import ai.jamerly.tiein.dto.PromptDto;
 import ai.jamerly.tiein.dto.ResourceDto;
-import ai.jamerly.tiein.dto.ToolDto;
 import ai.jamerly.tiein.entity.MCPPrompt;
 import ai.jamerly.tiein.entity.MCPResource;
 import ai.jamerly.tiein.entity.MCPTool;
-import ai.jamerly.tiein.entity.User;
-import ai.jamerly.tiein.repository.UserRepository;
 import ai.jamerly.tiein.service.CompletionService;
+import ai.jamerly.tiein.service.DescriptorCache;
 import ai.jamerly.tiein.service.MCPPromptService;
 import ai.jamerly.tiein.service.MCPResourceService;
 import ai.jamerly.tiein.service.MCPToolService;
 import ai.jamerly.tiein.service.UserService; // Import UserService
 import ai.jamerly.tiein.security.jwt.JwtUtil;
+import io.jsonwebtoken.Claims;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Component;
@@ -31,11 +28,19 @@ import org.springframework.util.CollectionUtils;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
 
 @Component
 public class MCPWebSocketHandler extends TextWebSocketHandler {
@@ -45,9 +50,6 @@ public class MCPWebSocketHandler extends TextWebSocketHandler {
     @Autowired
     private JwtUtil jwtUtil;
 
-    @Autowired
-    private UserRepository userRepository;
-
     @Autowired
     private UserService userService; // Autowire UserService
 
@@ -63,8 +65,23 @@ public class MCPWebSocketHandler extends TextWebSocketHandler {
     @Autowired
     private CompletionService completionService;
 
+    @Autowired
+    private DescriptorCache descriptorCache;
+
+    @Value("${mcp.ws.max-in-flight:16}")
+    private int maxInFlightRequests;
+
+    @Value("${mcp.list.page-size:100}")
+    private int listPageSize;
+
+    private final ExecutorService requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
     public static final String USERNAME_SESSION_ATTRIBUTE = "username";
     public static final String ROLE_SESSION_ATTRIBUTE = "role";
+    private static final String CONCURRENT_SESSION_ATTRIBUTE = "concurrentSession";
+    private static final String IN_FLIGHT_SESSION_ATTRIBUTE = "inFlight";
+    private static final int SEND_TIME_LIMIT_MS = 10000;
+    private static final int SEND_BUFFER_SIZE_LIMIT = 512 * 1024;
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
@@ -81,13 +98,14 @@ public class MCPWebSocketHandler extends TextWebSocketHandler {
         }
 
         try {
-            String username = jwtUtil.extractUsername(token);
+            Claims claims = jwtUtil.extractAllClaims(token);
+            String username = claims.getSubject();
             if (username == null) { // Check if username can be extracted
                 session.close(new CloseStatus(CloseStatus.POLICY_VIOLATION.getCode(), "Invalid token: Username not found."));
                 return;
             }
 
-            // Load UserDetails to validate the token
+            // Load UserDetails to validate the token (cached by UserService)
             UserDetails userDetails = null;
             try {
                 userDetails = userService.loadUserByUsername(username);
@@ -96,22 +114,20 @@ public class MCPWebSocketHandler extends TextWebSocketHandler {
                 return;
             }
 
-            if (!jwtUtil.validateToken(token, userDetails)) { // Use userDetails for validation
+            if (!jwtUtil.validateToken(claims, userDetails)) { // Use userDetails for validation
                 session.close(new CloseStatus(CloseStatus.POLICY_VIOLATION.getCode(), "Invalid or expired token."));
                 return;
             }
 
             // User is authenticated, proceed to set session attributes
-            Optional<User> userOptional = userRepository.findByUsername(username);
-            if (userOptional.isEmpty()) { // This should ideally not happen if loadUserByUsername succeeded
-                session.close(new CloseStatus(CloseStatus.POLICY_VIOLATION.getCode(), "User not found after validation."));
-                return;
-            }
-
-            User user = userOptional.get();
-            session.getAttributes().put(USERNAME_SESSION_ATTRIBUTE, user.getUsername());
-            session.getAttributes().put(ROLE_SESSION_ATTRIBUTE, user.getRole());
-            System.out.println("User " + user.getUsername() + " connected with role " + user.getRole());
+            String role = UserService.getRole(userDetails);
+            // Sends from concurrently running requests are serialized by the decorator
+            session.getAttributes().put(CONCURRENT_SESSION_ATTRIBUTE,
+                    new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, SEND_BUFFER_SIZE_LIMIT));
+            session.getAttributes().put(IN_FLIGHT_SESSION_ATTRIBUTE, new Semaphore(maxInFlightRequests));
+            session.getAttributes().put(USERNAME_SESSION_ATTRIBUTE, userDetails.getUsername());
+            session.getAttributes().put(ROLE_SESSION_ATTRIBUTE, role);
+            System.out.println("User " + userDetails.getUsername() + " connected with role " + role);
 
         } catch (Exception e) {
             System.err.println("Authentication error: " + e.getMessage());
@@ -128,19 +144,114 @@ public class MCPWebSocketHandler extends TextWebSocketHandler {
             return;
         }
 
+        WebSocketSession concurrentSession = (WebSocketSession) session.getAttributes().get(CONCURRENT_SESSION_ATTRIBUTE);
+        Semaphore inFlight = (Semaphore) session.getAttributes().get(IN_FLIGHT_SESSION_ATTRIBUTE);
         String payload = message.getPayload();
         System.out.println("Received message: " + payload);
 
+        JsonNode rootNode;
         try {
-            JsonNode rootNode = objectMapper.readTree(payload);
+            rootNode = objectMapper.readTree(payload);
+        } catch (IOException e) {
+            System.err.println("Error parsing WebSocket message: " + e.getMessage());
+            sendError(concurrentSession, null, -32700, "Parse error");
+            return;
+        }
+        if (rootNode.isArray() && rootNode.isEmpty()) {
+            sendError(concurrentSession, null, -32600, "Invalid Request: empty batch");
+            return;
+        }
+
+        // A batch takes one in-flight slot per contained request, so it can hold at most as many requests as
+        // the limit allows; a larger one could never be admitted, even on an idle connection
+        if (rootNode.isArray() && rootNode.size() > maxInFlightRequests) {
+            sendError(concurrentSession, null, -32600, "Invalid Request: batch too large, limit is " + maxInFlightRequests);
+            return;
+        }
+        int permits = rootNode.isArray() ? rootNode.size() : 1;
+        if (!inFlight.tryAcquire(permits)) {
+            sendError(concurrentSession, rootNode.isArray() ? null : rootNode.get("id"), -32000,
+                    "Too many in-flight requests, limit is " + maxInFlightRequests);
+            return;
+        }
 
-            JsonNode idNode = rootNode.get("id");
+        // Requests run concurrently so a slow tool call does not hold up later requests such as ping;
+        // responses are correlated by their JSON-RPC id
+        try {
+            requestExecutor.execute(() -> {
+                try {
+                    if (rootNode.isArray()) {
+                        ArrayNode responses = processBatch(rootNode);
+                        if (!responses.isEmpty()) {
+                            send(concurrentSession, responses);
+                        }
+                    } else {
+                        ObjectNode response = process(rootNode);
+                        if (!isNotification(rootNode)) {
+                            send(concurrentSession, response);
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error sending WebSocket response: " + e.getMessage());
+                } finally {
+                    inFlight.release(permits);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release(permits);
+            sendError(concurrentSession, null, -32000, "Server is shutting down");
+        }
+    }
+
+    /**
+     * Runs the calls of a JSON-RPC batch concurrently and collects their responses, in request
+     * order, into one array. Notifications (requests without an id) get no entry, not even when they fail.
+     */
+    ArrayNode processBatch(JsonNode batchNode) {
+        List<JsonNode> requests = new ArrayList<>();
+        List<CompletableFuture<ObjectNode>> futures = new ArrayList<>();
+        for (JsonNode requestNode : batchNode) {
+            requests.add(requestNode);
+            futures.add(CompletableFuture.supplyAsync(() -> process(requestNode), requestExecutor));
+        }
+
+        ArrayNode responses = objectMapper.createArrayNode();
+        for (int i = 0; i < futures.size(); i++) {
+            JsonNode requestNode = requests.get(i);
+            ObjectNode response;
+            try {
+                response = futures.get(i).join();
+            } catch (Exception e) {
+                response = error(requestNode.get("id"), -32000, "Server error: " + e.getMessage());
+            }
+            if (!isNotification(requestNode)) {
+                responses.add(response);
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * A notification is a well-formed request without an id; JSON-RPC 2.0 forbids answering it, whether it
+     * succeeds or fails. Malformed requests (not an object, or no method) are answered with an error.
+     */
+    private static boolean isNotification(JsonNode requestNode) {
+        return requestNode.isObject() && !requestNode.has("id")
+                && requestNode.has("method") && requestNode.get("method").isTextual();
+    }
+
+    private ObjectNode process(JsonNode rootNode) {
+        if (!rootNode.isObject()) {
+            return error(null, -32600, "Invalid Request: expected a JSON object");
+        }
+
+        JsonNode idNode = rootNode.get("id");
+        try {
             JsonNode methodNode = rootNode.get("method");
             JsonNode paramsNode = rootNode.get("params");
 
             if (methodNode == null || !methodNode.isTextual()) {
-                sendError(session, idNode, -32600, "Invalid Request: 'method' field missing or not a string");
-                return;
+                return error(idNode, -32600, "Invalid Request: 'method' field missing or not a string");
             }
 
             String method = methodNode.asText();
@@ -148,64 +259,49 @@ public class MCPWebSocketHandler extends TextWebSocketHandler {
 
             switch (method) {
                 case "initialize":
-                    handleInitialize(session, idNode, paramsNode);
-                    break;
+                    return handleInitialize(idNode, paramsNode);
                 case "ping":
-                    handlePing(session, idNode);
-                    break;
+                    return handlePing(idNode);
                 case "tools/call":
-                    handleToolsCall(session, idNode, paramsNode);
-                    break;
+                    return handleToolsCall(idNode, paramsNode);
                 case "tools/list":
-                    handleToolsList(session, idNode, paramsNode);
-                    break;
+                    return handleToolsList(idNode, paramsNode);
                 case "resources/list":
-                    handleResourcesList(session, idNode, paramsNode);
-                    break;
+                    return handleResourcesList(idNode, paramsNode);
                 case "resources/read":
-                    handleResourcesRead(session, idNode, paramsNode);
-                    break;
+                    return handleResourcesRead(idNode, paramsNode);
                 case "prompts/list":
-                    handlePromptsList(session, idNode, paramsNode);
-                    break;
+                    return handlePromptsList(idNode, paramsNode);
                 case "prompts/get":
-                    handlePromptsGet(session, idNode, paramsNode);
-                    break;
+                    return handlePromptsGet(idNode, paramsNode);
                 case "completion/complete":
-                    handleCompletionComplete(session, idNode, paramsNode);
-                    break;
+                    return handleCompletionComplete(idNode, paramsNode);
                 // Add other MCP methods here
                 default:
-                    sendError(session, idNode, -32601, "Method not found: " + method);
-                    break;
+                    return error(idNode, -32601, "Method not found: " + method);
             }
-
-        } catch (IOException e) {
-            System.err.println("Error parsing WebSocket message: " + e.getMessage());
-            sendError(session, null, -32700, "Parse error");
         } catch (Exception e) {
             System.err.println("Error processing WebSocket message: " + e.getMessage());
-            sendError(session, null, -32000, "Server error: " + e.getMessage());
+            return error(idNode, -32000, "Server error: " + e.getMessage());
         }
     }
 
-    private void handleInitialize(WebSocketSession session, JsonNode idNode, JsonNode paramsNode) throws IOException {
+    private ObjectNode handleInitialize(JsonNode idNode, JsonNode paramsNode) {
         // For now, just send a success response with a protocol version
         ObjectNode result = objectMapper.createObjectNode();
         result.put("protocolVersion", "2025-06-18"); // Example protocol version
         // Add capabilities based on paramsNode if needed
 
-        sendResponse(session, idNode, result);
+        return response(idNode, result);
     }
 
-    private void handlePing(WebSocketSession session, JsonNode idNode) throws IOException {
-        sendResponse(session, idNode, objectMapper.createObjectNode()); // Empty result for ping
+    private ObjectNode handlePing(JsonNode idNode) {
+        return response(idNode, objectMapper.createObjectNode()); // Empty result for ping
     }
 
-    private void handleToolsCall(WebSocketSession session, JsonNode idNode, JsonNode paramsNode) throws IOException {
+    private ObjectNode handleToolsCall(JsonNode idNode, JsonNode paramsNode) {
         if (paramsNode == null || !paramsNode.has("name")) {
-            sendError(session, idNode, -32602, "Invalid params for tools/call: 'name' is required.");
-            return;
+            return error(idNode, -32602, "Invalid params for tools/call: 'name' is required.");
         }
 
         String toolName = paramsNode.get("name").asText();
@@ -232,56 +328,45 @@ public class MCPWebSocketHandler extends TextWebSocketHandler {
                 resultNode.put("errorMessage", executionResult.getErrorMessage());
             }
 
-            sendResponse(session, idNode, resultNode);
+            return response(idNode, resultNode);
 
         } catch (IllegalArgumentException e) {
-            sendError(session, idNode, -32000, e.getMessage()); // Tool not found
+            return error(idNode, -32000, e.getMessage()); // Tool not found
         } catch (Exception e) {
-            sendError(session, idNode, -32000, "Error executing tool: " + e.getMessage());
+            return error(idNode, -32000, "Error executing tool: " + e.getMessage());
         }
     }
 
-    private void handleToolsList(WebSocketSession session, JsonNode idNode, JsonNode paramsNode) throws IOException {
-        ArrayNode toolsArray = objectMapper.createArrayNode();
-        Integer page = 1;
-        while(Boolean.TRUE){
-            Page<MCPTool> mcpTools = mcpToolService.getAllTools(
-                    PageRequest.of(page++,100),
-                    List.of()
-            );
-            for (MCPTool mcpTool : mcpTools.getContent()) {
-                ToolDto toolDto = new ToolDto();
-                toolDto.setName(mcpTool.getName());
-                toolDto.setDescription(mcpTool.getDescription());
-
-                if (mcpTool.getInputSchemaJson() != null && !mcpTool.getInputSchemaJson().isEmpty()) {
-                    toolDto.setInputSchema(objectMapper.readTree(mcpTool.getInputSchemaJson()));
-                }
-                if (mcpTool.getOutputSchemaJson() != null && !mcpTool.getOutputSchemaJson().isEmpty()) {
-                    toolDto.setOutputSchema(objectMapper.readTree(mcpTool.getOutputSchemaJson()));
-                }
+    private ObjectNode handleToolsList(JsonNode idNode, JsonNode paramsNode) {
+        try {
+            Long afterId = decodeCursor(paramsNode);
+            List<MCPTool> mcpTools = mcpToolService.getToolsAfter(afterId, listPageSize + 1);
+            ArrayNode toolsArray = objectMapper.createArrayNode();
 
-                toolsArray.add(objectMapper.valueToTree(toolDto));
+            for (MCPTool mcpTool : mcpTools.subList(0, Math.min(listPageSize, mcpTools.size()))) {
+                toolsArray.add(descriptorCache.getToolDescriptor(mcpTool));
             }
-        }
-        ObjectNode result = objectMapper.createObjectNode();
-        result.set("tools", toolsArray);
-        try {
-            sendResponse(session, idNode, result);
+
+            ObjectNode result = objectMapper.createObjectNode();
+            result.set("tools", toolsArray);
+            setNextCursor(result, mcpTools, MCPTool::getId);
+
+            return response(idNode, result);
+
+        } catch (IllegalArgumentException e) {
+            return error(idNode, -32602, e.getMessage()); // Invalid cursor
         } catch (Exception e) {
-            sendError(session, idNode, -32000, "Error listing tools: " + e.getMessage());
+            return error(idNode, -32000, "Error listing tools: " + e.getMessage());
         }
     }
 
-    private void handleResourcesList(WebSocketSession session, JsonNode idNode, JsonNode paramsNode) throws IOException {
+    private ObjectNode handleResourcesList(JsonNode idNode, JsonNode paramsNode) {
         try {
-            Page<MCPResource> mcpResources = mcpResourceService.getAllResources(
-                    PageRequest.of(0,1000, Sort.by("id").descending()),
-                    Collections.emptyList()
-            );
+            Long afterId = decodeCursor(paramsNode);
+            List<MCPResource> mcpResources = mcpResourceService.getResourcesAfter(afterId, listPageSize + 1);
             ArrayNode resourcesArray = objectMapper.createArrayNode();
 
-            for (MCPResource mcpResource : mcpResources.getContent()) {
+            for (MCPResource mcpResource : mcpResources.subList(0, Math.min(listPageSize, mcpResources.size()))) {
                 ResourceDto resourceDto = new ResourceDto();
                 resourceDto.setUri(mcpResource.getUri());
                 resourceDto.setDescription(mcpResource.getDescription());
@@ -291,18 +376,20 @@ public class MCPWebSocketHandler extends TextWebSocketHandler {
 
             ObjectNode result = objectMapper.createObjectNode();
             result.set("resources", resourcesArray);
+            setNextCursor(result, mcpResources, MCPResource::getId);
 
-            sendResponse(session, idNode, result);
+            return response(idNode, result);
 
+        } catch (IllegalArgumentException e) {
+            return error(idNode, -32602, e.getMessage()); // Invalid cursor
         } catch (Exception e) {
-            sendError(session, idNode, -32000, "Error listing resources: " + e.getMessage());
+            return error(idNode, -32000, "Error listing resources: " + e.getMessage());
         }
     }
 
-    private void handleResourcesRead(WebSocketSession session, JsonNode idNode, JsonNode paramsNode) throws IOException {
+    private ObjectNode handleResourcesRead(JsonNode idNode, JsonNode paramsNode) {
         if (paramsNode == null || !paramsNode.has("uri")) {
-            sendError(session, idNode, -32602, "Invalid params for resources/read: 'uri' is required.");
-            return;
+            return error(idNode, -32602, "Invalid params for resources/read: 'uri' is required.");
         }
 
         String uri = paramsNode.get("uri").asText();
@@ -316,52 +403,41 @@ public class MCPWebSocketHandler extends TextWebSocketHandler {
             result.put("content", mcpResource.getContent());
             result.put("contentType", mcpResource.getContentType());
 
-            sendResponse(session, idNode, result);
+            return response(idNode, result);
 
         } catch (IllegalArgumentException e) {
-            sendError(session, idNode, -32000, e.getMessage()); // Resource not found
+            return error(idNode, -32000, e.getMessage()); // Resource not found
         } catch (Exception e) {
-            sendError(session, idNode, -32000, "Error reading resource: " + e.getMessage());
+            return error(idNode, -32000, "Error reading resource: " + e.getMessage());
         }
     }
 
-    private void handlePromptsList(WebSocketSession session, JsonNode idNode, JsonNode paramsNode) throws IOException {
+    private ObjectNode handlePromptsList(JsonNode idNode, JsonNode paramsNode) {
         try {
-            Page<MCPPrompt> mcpPrompts = mcpPromptService.getAllPrompts(
-                    PageRequest.of(0,1000),List.of()
-            );
+            Long afterId = decodeCursor(paramsNode);
+            List<MCPPrompt> mcpPrompts = mcpPromptService.getPromptsAfter(afterId, listPageSize + 1);
             ArrayNode promptsArray = objectMapper.createArrayNode();
 
-            for (MCPPrompt mcpPrompt : mcpPrompts) {
-                PromptDto promptDto = new PromptDto();
-                promptDto.setName(mcpPrompt.getName());
-                promptDto.setDescription(mcpPrompt.getDescription());
-                promptDto.setContent(mcpPrompt.getContent());
-
-                if (mcpPrompt.getInputSchemaJson() != null && !mcpPrompt.getInputSchemaJson().isEmpty()) {
-                    promptDto.setInputSchema(objectMapper.readTree(mcpPrompt.getInputSchemaJson()));
-                }
-                if (mcpPrompt.getOutputSchemaJson() != null && !mcpPrompt.getOutputSchemaJson().isEmpty()) {
-                    promptDto.setOutputSchema(objectMapper.readTree(mcpPrompt.getOutputSchemaJson()));
-                }
-
-                promptsArray.add(objectMapper.valueToTree(promptDto));
+            for (MCPPrompt mcpPrompt : mcpPrompts.subList(0, Math.min(listPageSize, mcpPrompts.size()))) {
+                promptsArray.add(descriptorCache.getPromptDescriptor(mcpPrompt));
             }
 
             ObjectNode result = objectMapper.createObjectNode();
             result.set("prompts", promptsArray);
+            setNextCursor(result, mcpPrompts, MCPPrompt::getId);
 
-            sendResponse(session, idNode, result);
+            return response(idNode, result);
 
+        } catch (IllegalArgumentException e) {
+            return error(idNode, -32602, e.getMessage()); // Invalid cursor
         } catch (Exception e) {
-            sendError(session, idNode, -32000, "Error listing prompts: " + e.getMessage());
+            return error(idNode, -32000, "Error listing prompts: " + e.getMessage());
         }
     }
 
-    private void handlePromptsGet(WebSocketSession session, JsonNode idNode, JsonNode paramsNode) throws IOException {
+    private ObjectNode handlePromptsGet(JsonNode idNode, JsonNode paramsNode) {
         if (paramsNode == null || !paramsNode.has("name")) {
-            sendError(session, idNode, -32602, "Invalid params for prompts/get: 'name' is required.");
-            return;
+            return error(idNode, -32602, "Invalid params for prompts/get: 'name' is required.");
         }
 
         String promptName = paramsNode.get("name").asText();
@@ -375,26 +451,27 @@ public class MCPWebSocketHandler extends TextWebSocketHandler {
             result.put("content", mcpPrompt.getContent());
             result.put("description", mcpPrompt.getDescription());
 
-            if (mcpPrompt.getInputSchemaJson() != null && !mcpPrompt.getInputSchemaJson().isEmpty()) {
-                result.set("inputSchema", objectMapper.readTree(mcpPrompt.getInputSchemaJson()));
+            // Reuse the schema trees parsed for prompts/list
+            JsonNode descriptor = descriptorCache.getPromptDescriptor(mcpPrompt);
+            if (descriptor.hasNonNull("inputSchema")) {
+                result.set("inputSchema", descriptor.get("inputSchema"));
             }
-            if (mcpPrompt.getOutputSchemaJson() != null && !mcpPrompt.getOutputSchemaJson().isEmpty()) {
-                result.set("outputSchema", objectMapper.readTree(mcpPrompt.getOutputSchemaJson()));
+            if (descriptor.hasNonNull("outputSchema")) {
+                result.set("outputSchema", descriptor.get("outputSchema"));
             }
 
-            sendResponse(session, idNode, result);
+            return response(idNode, result);
 
         } catch (IllegalArgumentException e) {
-            sendError(session, idNode, -32000, e.getMessage()); // Prompt not found
+            return error(idNode, -32000, e.getMessage()); // Prompt not found
         } catch (Exception e) {
-            sendError(session, idNode, -32000, "Error getting prompt: " + e.getMessage());
+            return error(idNode, -32000, "Error getting prompt: " + e.getMessage());
         }
     }
 
-    private void handleCompletionComplete(WebSocketSession session, JsonNode idNode, JsonNode paramsNode) throws IOException {
+    private ObjectNode handleCompletionComplete(JsonNode idNode, JsonNode paramsNode) {
         if (paramsNode == null || !paramsNode.has("ref") || !paramsNode.has("argument")) {
-            sendError(session, idNode, -32602, "Invalid params for completion/complete: 'ref' and 'argument' are required.");
-            return;
+            return error(idNode, -32602, "Invalid params for completion/complete: 'ref' and 'argument' are required.");
         }
 
         try {
@@ -413,24 +490,51 @@ public class MCPWebSocketHandler extends TextWebSocketHandler {
                 }
             }
 
-            sendResponse(session, idNode, resultNode);
+            return response(idNode, resultNode);
 
         } catch (Exception e) {
-            sendError(session, idNode, -32000, "Error completing: " + e.getMessage());
+            return error(idNode, -32000, "Error completing: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the opaque MCP {@code cursor} param. The cursor is the base64 encoded id of the last
+     * entry of the previous page; no cursor means the first page.
+     */
+    private Long decodeCursor(JsonNode paramsNode) {
+        if (paramsNode == null || !paramsNode.hasNonNull("cursor")) {
+            return null;
+        }
+        try {
+            String cursor = new String(Base64.getUrlDecoder().decode(paramsNode.get("cursor").asText()), StandardCharsets.UTF_8);
+            return Long.parseLong(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid params: malformed cursor.");
+        }
+    }
+
+    /**
+     * Sets {@code nextCursor} when the keyset query returned more than one page of entries.
+     */
+    private <T> void setNextCursor(ObjectNode result, List<T> entries, Function<T, Long> idExtractor) {
+        if (entries.size() > listPageSize) {
+            Long lastId = idExtractor.apply(entries.get(listPageSize - 1));
+            result.put("nextCursor", Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(String.valueOf(lastId).getBytes(StandardCharsets.UTF_8)));
         }
     }
 
-    private void sendResponse(WebSocketSession session, JsonNode idNode, JsonNode result) throws IOException {
+    private ObjectNode response(JsonNode idNode, JsonNode result) {
         ObjectNode response = objectMapper.createObjectNode();
         response.put("jsonrpc", "2.0");
         if (idNode != null) {
             response.set("id", idNode);
         }
         response.set("result", result);
-        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(response)));
+        return response;
     }
 
-    private void sendError(WebSocketSession session, JsonNode idNode, int code, String message) throws IOException {
+    private ObjectNode error(JsonNode idNode, int code, String message) {
         ObjectNode error = objectMapper.createObjectNode();
         error.put("code", code);
         error.put("message", message);
@@ -441,11 +545,24 @@ public class MCPWebSocketHandler extends TextWebSocketHandler {
             response.set("id", idNode);
         }
         response.set("error", error);
+        return response;
+    }
+
+    private void send(WebSocketSession session, JsonNode response) throws IOException {
         session.sendMessage(new TextMessage(objectMapper.writeValueAsString(response)));
     }
 
+    private void sendError(WebSocketSession session, JsonNode idNode, int code, String message) throws IOException {
+        send(session, error(idNode, code, message));
+    }
+
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
         System.out.println("WebSocket connection closed: " + session.getId() + " with status: " + status);
     }
+
+    @PreDestroy
+    public void shutdown() {
+        requestExecutor.shutdown();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package ai.jamerly.tiein.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor used to run MCP tool calls concurrently. It is backed by virtual threads
+ * and bounded by {@code tool.call.max-concurrency}; at most {@code tool.call.queue-capacity}
+ * calls wait for a slot, further calls are rejected and reported to the model as failed.
+ */
+@Configuration
+public class ToolExecutorConfig {
+
+    @Value("${tool.call.max-concurrency:64}")
+    private int maxConcurrency;
+
+    @Value("${tool.call.queue-capacity:256}")
+    private int queueCapacity;
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService toolCallExecutor() {
+        return new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), Thread.ofVirtual().name("tool-call-", 0).factory());
+    }
+}
@@ -0,0 +1,81 @@
+package ai.jamerly.tiein.config;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Long-lived, connection-pooled HTTP clients used to execute HTTP-type MCP tools.
+ * The async client is only created when {@code tool.http.async=true}.
+ */
+@Configuration
+public class ToolHttpClientConfig {
+
+    @Value("${tool.http.max-total:200}")
+    private int maxTotal;
+
+    @Value("${tool.http.max-per-route:20}")
+    private int maxPerRoute;
+
+    @Value("${tool.http.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    @Value("${tool.http.response-timeout-ms:30000}")
+    private long responseTimeoutMs;
+
+    @Value("${tool.http.keep-alive-ms:60000}")
+    private long keepAliveMs;
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient toolHttpClient() {
+        return HttpClients.custom()
+                .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                        .setMaxConnTotal(maxTotal)
+                        .setMaxConnPerRoute(maxPerRoute)
+                        .setDefaultConnectionConfig(connectionConfig())
+                        .build())
+                .setDefaultRequestConfig(requestConfig())
+                .evictIdleConnections(TimeValue.ofMilliseconds(keepAliveMs))
+                .build();
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "tool.http.async", havingValue = "true")
+    public CloseableHttpAsyncClient toolHttpAsyncClient() {
+        CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setConnectionManager(PoolingAsyncClientConnectionManagerBuilder.create()
+                        .setMaxConnTotal(maxTotal)
+                        .setMaxConnPerRoute(maxPerRoute)
+                        .setDefaultConnectionConfig(connectionConfig())
+                        .build())
+                .setDefaultRequestConfig(requestConfig())
+                .evictIdleConnections(TimeValue.ofMilliseconds(keepAliveMs))
+                .build();
+        client.start();
+        return client;
+    }
+
+    private ConnectionConfig connectionConfig() {
+        return ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                .build();
+    }
+
+    private RequestConfig requestConfig() {
+        return RequestConfig.custom()
+                .setResponseTimeout(Timeout.ofMilliseconds(responseTimeoutMs))
+                .setConnectionKeepAlive(TimeValue.ofMilliseconds(keepAliveMs))
+                .build();
+    }
+}
@@ -11,6 +11,8 @@ import ai.jamerly.tiein.entity.MCPChatBase;
 import ai.jamerly.tiein.security.jwt.JwtUtil;
 import ai.jamerly.tiein.service.*;
 import com.alibaba.fastjson2.JSONObject;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.jsoup.internal.StringUtil;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -51,13 +53,22 @@ public class ChatBaseClientController {
     @Autowired
     private JwtUtil jwtUtil;
 
+    @Autowired
+    private ClientRateLimiter clientRateLimiter;
+
     @GetMapping("/init")
     public Mono<ResponseEntity<ApiResponse<ChatInitResponse>>> getChatBaseWelcomeMessage(
             @RequestHeader("X-App-Id") String appId,
             @RequestHeader(value = "X-Session-Id", required = false) String sessionId,
             @RequestHeader(value = "Authorization", required = false) String authorizationHeader,
-            @RequestHeader("X-Accept-Language") String language) {
+            @RequestHeader("X-Accept-Language") String language,
+            HttpServletRequest httpRequest) {
 
+        // Every call may mint a new session, so it is also limited per client address
+        if (!clientRateLimiter.tryAcquire(ClientRateLimiter.APP, appId)
+                || !clientRateLimiter.tryAcquire(ClientRateLimiter.USER, appId + ":init:ip:" + httpRequest.getRemoteAddr())) {
+            return Mono.just(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(ApiResponse.error(HttpStatus.TOO_MANY_REQUESTS.value(), "Too many requests.")));
+        }
         if( "Bearer".equals(authorizationHeader.trim())){
             authorizationHeader = "";
         }
@@ -90,10 +101,12 @@ public class ChatBaseClientController {
             if (authorizationHeader == null || authorizationHeader.isEmpty()) {
                 return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(ApiResponse.error(HttpStatus.UNAUTHORIZED.value(), "Authorization header is missing.")));
             }
-            try {
-                userProfile = outerUserService.getProfileFromAuth(mcpChatBase.getAuthUrl(), authorizationHeader);
-            }catch (Exception e){
-                return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(ApiResponse.error(HttpStatus.UNAUTHORIZED.value(), "Authorization failed")));
+            if (userProfile == null) { // Already loaded above for the same header
+                try {
+                    userProfile = outerUserService.getProfileFromAuth(mcpChatBase.getAuthUrl(), authorizationHeader);
+                }catch (Exception e){
+                    return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(ApiResponse.error(HttpStatus.UNAUTHORIZED.value(), "Authorization failed")));
+                }
             }
         }
         InitResult initResult = chatBaseService.getWelcomeMessage(appId, language, userProfile);
@@ -200,7 +213,13 @@ public class ChatBaseClientController {
                                            @RequestHeader(value = "X-Session-Id", required = true) String sessionId,
                                            @RequestHeader(value = "X-Chat-Token", required = true) String chatToken,
                                            @RequestHeader(value = "Authorization", required = false) String authorizationHeader,
-                                           @RequestBody ChatMessageRequest request) {
+                                           @RequestBody ChatMessageRequest request,
+                                           HttpServletRequest httpRequest,
+                                           HttpServletResponse response) {
+        if (!clientRateLimiter.tryAcquire(ClientRateLimiter.APP, appId)) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            return Flux.just("Error: Too many requests.");
+        }
         MCPChatBase mcpChatBase = chatBaseService.getChatBaseByAppId(appId);
         if( "Bearer".equals(authorizationHeader.trim())){
             authorizationHeader = "";
@@ -237,19 +256,35 @@ public class ChatBaseClientController {
         if( StringUtil.isBlank(userId) ){
             return Flux.just("User info not found.");
         }
-        String userProfileJson = null;
-        if( !StringUtil.isBlank(authorizationHeader)){
-            try {
-                userProfileJson = outerUserService.getProfileFromAuth(mcpChatBase.getAuthUrl(), authorizationHeader);
-            } catch (Exception e) {
-                return Flux.just("Error: Remote authentication failed.");
-            }
+        // Anonymous visitors all carry userId -1, and /init hands out sessions freely, so they are
+        // limited per client address instead
+        String visitorKey = appId + ":" + ("-1".equals(userId) ? "ip:" + httpRequest.getRemoteAddr() : userId);
+        if (!clientRateLimiter.tryAcquire(ClientRateLimiter.USER, visitorKey)) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            return Flux.just("Error: Too many requests.");
+        }
+        Runnable releaseStream = clientRateLimiter.tryAcquireStream(appId, visitorKey);
+        if (releaseStream == null) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            return Flux.just("Error: Too many concurrent conversations.");
         }
-        if( StringUtil.isBlank(userId)){
-            return Flux.just("Error: Authentication failed.");
+        try {
+            String userProfileJson = null;
+            if( !StringUtil.isBlank(authorizationHeader)){
+                try {
+                    userProfileJson = outerUserService.getProfileFromAuth(mcpChatBase.getAuthUrl(), authorizationHeader);
+                } catch (Exception e) {
+                    releaseStream.run();
+                    return Flux.just("Error: Remote authentication failed.");
+                }
+            }
+            return chatBaseService.processChatMessage(
+                    mcpChatBase.getId(),UUID.fromString(sessionId), userId, request.getMessage(), userProfileJson)
+                    .doFinally(signal -> releaseStream.run()); // Completion, error or client disconnect
+        } catch (RuntimeException e) {
+            releaseStream.run();
+            throw e;
         }
-        return chatBaseService.processChatMessage(
-                mcpChatBase.getId(),UUID.fromString(sessionId), userId, request.getMessage(), userProfileJson);
     }
 
 }
@@ -4,8 +4,8 @@ import ai.jamerly.tiein.dto.ApiResponse;
 import ai.jamerly.tiein.dto.PageerDto;
 import ai.jamerly.tiein.entity.MCPTool;
 import ai.jamerly.tiein.entity.SystemSetting;
-import ai.jamerly.tiein.repository.UserRepository;
 import ai.jamerly.tiein.service.MCPToolService;
+import ai.jamerly.tiein.service.SystemInitializationState;
 import ai.jamerly.tiein.service.SystemSettingService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -35,7 +35,7 @@ public class MCPServerController {
     private SystemSettingService systemSettingService;
 
     @Autowired
-    private UserRepository userRepository;
+    private SystemInitializationState systemInitializationState;
 
     @Value("${info.app.name:TieIn MCP Server}")
     private String appName;
@@ -99,7 +99,7 @@ public class MCPServerController {
 
     @GetMapping("/status/initialized")
     public ResponseEntity<ApiResponse<Boolean>> getSystemInitializedStatus() {
-        return ResponseEntity.ok(ApiResponse.success(userRepository.count() > 0));
+        return ResponseEntity.ok(ApiResponse.success(systemInitializationState.isInitialized()));
     }
 
     private String formatUptime(long millis) {
@@ -10,7 +10,9 @@ import java.util.UUID;
 
 @Data
 @Entity
-@Table(name = "chatbase_history")
+@Table(name = "chatbase_history", indexes = {
+        @Index(name = "idx_chat_history_session_time", columnList = "chat_session_id, timestamp")
+})
 public class ChatHistory {
 
     @Id
@@ -28,4 +28,11 @@ public class ChatSession {
     private String userId;
 
     private Long chatBaseId;
+
+    @Column(columnDefinition = "TEXT")
+    private String summary; // Rolling summary of the turns up to summarizedUntil
+
+    private Date summarizedUntil;
+
+    private Long summarizedUntilId; // Last summarized turn, breaks ties between turns sharing summarizedUntil
 }
@@ -0,0 +1,22 @@
+package ai.jamerly.tiein.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * One row of a group membership join table: entity {@code memberId} belongs to group {@code groupId}.
+ * Each catalog entity type has its own table, see the subclasses.
+ */
+@Data
+@MappedSuperclass
+public abstract class GroupMembership {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long groupId;
+
+    @Column(nullable = false)
+    private Long memberId;
+}
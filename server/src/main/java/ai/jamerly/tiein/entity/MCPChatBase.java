@@ -49,6 +49,12 @@ public class MCPChatBase {
     @Column
     private String authUrl;
 
+    @Enumerated(EnumType.STRING)
+    private HistoryMode historyMode; // null falls back to the chat.history.window-* defaults
+
+    @Column
+    private Integer historyLimit; // Number of turns or token budget, depending on historyMode
+
     @CreationTimestamp
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -62,6 +68,11 @@ public class MCPChatBase {
         INACTIVE
     }
 
+    public enum HistoryMode {
+        LAST_TURNS,   // Keep the last historyLimit question/answer pairs
+        TOKEN_BUDGET  // Keep the most recent turns that fit in historyLimit estimated tokens
+    }
+
     // Custom getter for groupIds to convert from JSON string
     public List<Long> getGroupIds() {
         if (this.groupIds == null && this.groupIdsJson != null) {
@@ -0,0 +1,15 @@
+package ai.jamerly.tiein.entity;
+
+import jakarta.persistence.*;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+@Entity
+@Table(name = "mcp_chatbase_group_members", indexes = {
+        @Index(name = "uk_chatbase_group_member", columnList = "group_id, member_id", unique = true),
+        @Index(name = "idx_chatbase_member", columnList = "member_id")
+})
+public class MCPChatBaseGroupMember extends GroupMembership {
+}
@@ -0,0 +1,15 @@
+package ai.jamerly.tiein.entity;
+
+import jakarta.persistence.*;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+@Entity
+@Table(name = "mcp_resource_group_members", indexes = {
+        @Index(name = "uk_resource_group_member", columnList = "group_id, member_id", unique = true),
+        @Index(name = "idx_resource_member", columnList = "member_id")
+})
+public class MCPResourceGroupMember extends GroupMembership {
+}
@@ -1,33 +1,32 @@
 package ai.jamerly.tiein.interceptor;
 
-import ai.jamerly.tiein.entity.User;
-import ai.jamerly.tiein.repository.UserRepository;
 import ai.jamerly.tiein.security.jwt.JwtUtil;
+import ai.jamerly.tiein.service.SystemInitializationState;
+import ai.jamerly.tiein.service.UserService;
 import com.alibaba.druid.util.StringUtils;
 import com.alibaba.fastjson2.JSONObject;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.jsoup.internal.StringUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
 
-import java.util.Optional;
-
 @Component
 public class SystemInitializationInterceptor implements HandlerInterceptor {
 
     @Autowired
-    private UserRepository userRepository;
-
-    @Autowired
-    private JwtUtil jwtUtil;
+    private SystemInitializationState systemInitializationState;
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
         // System initialization check
-        if (userRepository.count() == 0) {
+        if (!systemInitializationState.isInitialized()) {
             response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
             response.setContentType("application/json;charset=UTF-8");
             JSONObject errorResponse = new JSONObject();
@@ -37,44 +36,38 @@ public class SystemInitializationInterceptor implements HandlerInterceptor {
             return false;
         }
 
+        // Only JWTs are accepted here, not permanent tokens. JwtRequestFilter shares the claims of a
+        // bearer token it could verify and puts the matching principal in the SecurityContext.
         String authHeader = request.getHeader("Authorization");
-        String token = null;
-        String username = null;
+        if (authHeader != null && authHeader.startsWith("Bearer ")
+                && !(request.getAttribute(JwtUtil.CLAIMS_ATTRIBUTE) instanceof Claims)) {
+            // Token is invalid or expired
+            response.setStatus(HttpStatus.UNAUTHORIZED.value());
+            response.setContentType("application/json;charset=UTF-8");
+            JSONObject errorResponse = new JSONObject();
+            errorResponse.put("code", HttpStatus.UNAUTHORIZED.value());
+            errorResponse.put("message", "Invalid or expired token.");
+            response.getWriter().write(errorResponse.toJSONString());
+            return false;
+        }
 
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            token = authHeader.substring(7);
-            try {
-                username = jwtUtil.extractUsername(token);
-            } catch (Exception e) {
-                // Token is invalid or expired
-                response.setStatus(HttpStatus.UNAUTHORIZED.value());
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (request.getAttribute(JwtUtil.CLAIMS_ATTRIBUTE) instanceof Claims
+                && authentication != null && authentication.getPrincipal() instanceof UserDetails userDetails) {
+            String role = UserService.getRole(userDetails);
+            if ("ADMIN".equals(role) || "USER".equals(role)) {
+                return true; // Admin user, proceed
+            } else {
+                response.setStatus(HttpStatus.FORBIDDEN.value());
                 response.setContentType("application/json;charset=UTF-8");
                 JSONObject errorResponse = new JSONObject();
-                errorResponse.put("code", HttpStatus.UNAUTHORIZED.value());
-                errorResponse.put("message", "Invalid or expired token.");
+                errorResponse.put("code", HttpStatus.FORBIDDEN.value());
+                errorResponse.put("message", "Access denied: Admin role required.");
                 response.getWriter().write(errorResponse.toJSONString());
                 return false;
             }
         }
 
-        if (username != null) { // Assuming username is extracted from a valid token by JwtRequestFilter
-            Optional<User> userOptional = userRepository.findByUsername(username);
-            if (userOptional.isPresent()) {
-                User user = userOptional.get();
-                if ("ADMIN".equals(user.getRole()) || "USER".equals(user.getRole())) {
-                    return true; // Admin user, proceed
-                } else {
-                    response.setStatus(HttpStatus.FORBIDDEN.value());
-                    response.setContentType("application/json;charset=UTF-8");
-                    JSONObject errorResponse = new JSONObject();
-                    errorResponse.put("code", HttpStatus.FORBIDDEN.value());
-                    errorResponse.put("message", "Access denied: Admin role required.");
-                    response.getWriter().write(errorResponse.toJSONString());
-                    return false;
-                }
-            }
-        }
-
         // If no token or invalid token, or user not found
         response.setStatus(HttpStatus.UNAUTHORIZED.value());
         response.setContentType("application/json;charset=UTF-8");
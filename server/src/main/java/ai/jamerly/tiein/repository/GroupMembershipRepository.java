@@ -0,0 +1,18 @@
+package ai.jamerly.tiein.repository;
+
+import ai.jamerly.tiein.entity.GroupMembership;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.NoRepositoryBean;
+
+import java.util.List;
+
+@NoRepositoryBean
+public interface GroupMembershipRepository<T extends GroupMembership> extends JpaRepository<T, Long> {
+    List<T> findByMemberId(Long memberId);
+
+    @Modifying
+    @Query("delete from #{#entityName} m where m.memberId = :memberId")
+    void deleteByMemberId(Long memberId);
+}
@@ -0,0 +1,8 @@
+package ai.jamerly.tiein.repository;
+
+import ai.jamerly.tiein.entity.MCPChatBaseGroupMember;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface MCPChatBaseGroupMemberRepository extends GroupMembershipRepository<MCPChatBaseGroupMember> {
+}
@@ -2,12 +2,17 @@ package ai.jamerly.tiein.repository;
 
 import ai.jamerly.tiein.entity.MCPChatBase;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface MCPChatBaseRepository extends JpaRepository<MCPChatBase, Long> {
     Optional<MCPChatBase> findByAppId(String appId);
 
+    @Query("select c from MCPChatBase c join MCPChatBaseGroupMember m on m.memberId = c.id where m.groupId = :groupId order by c.id")
+    List<MCPChatBase> findByGroupId(Long groupId);
+
 }
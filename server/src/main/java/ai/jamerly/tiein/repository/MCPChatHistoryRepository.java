@@ -3,9 +3,13 @@ package ai.jamerly.tiein.repository;
 import ai.jamerly.tiein.entity.ChatHistory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
@@ -15,4 +19,21 @@ public interface MCPChatHistoryRepository extends JpaRepository<ChatHistory, Lon
     List<ChatHistory> findByChatSessionId(UUID sessionId);
 
     Page<ChatHistory> findByChatSessionId(UUID sessionId, Pageable pageable);
+
+    // Newest first, served by idx_chat_history_session_time
+    Slice<ChatHistory> findByChatSessionIdOrderByTimestampDescIdDesc(UUID sessionId, Pageable pageable);
+
+    // Turns after (sinceTimestamp, sinceId) in (timestamp, id) order, so turns sharing a timestamp are split by id;
+    // a null untilTimestamp leaves the range open
+    @Query("select count(h) from ChatHistory h where h.chatSessionId = :sessionId"
+            + " and (h.timestamp > :sinceTimestamp or (h.timestamp = :sinceTimestamp and h.id > :sinceId))")
+    long countAfter(@Param("sessionId") UUID sessionId, @Param("sinceTimestamp") Date sinceTimestamp,
+                    @Param("sinceId") Long sinceId);
+
+    @Query("select h from ChatHistory h where h.chatSessionId = :sessionId"
+            + " and (h.timestamp > :sinceTimestamp or (h.timestamp = :sinceTimestamp and h.id > :sinceId))"
+            + " and (:untilTimestamp is null or h.timestamp <= :untilTimestamp) order by h.timestamp asc, h.id asc")
+    List<ChatHistory> findAfter(@Param("sessionId") UUID sessionId, @Param("sinceTimestamp") Date sinceTimestamp,
+                                @Param("sinceId") Long sinceId, @Param("untilTimestamp") Date untilTimestamp,
+                                Pageable pageable);
 }
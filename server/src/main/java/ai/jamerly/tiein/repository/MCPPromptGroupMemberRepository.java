@@ -0,0 +1,8 @@
+package ai.jamerly.tiein.repository;
+
+import ai.jamerly.tiein.entity.MCPPromptGroupMember;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface MCPPromptGroupMemberRepository extends GroupMembershipRepository<MCPPromptGroupMember> {
+}
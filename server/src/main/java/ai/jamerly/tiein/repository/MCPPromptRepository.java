@@ -1,15 +1,22 @@
 package ai.jamerly.tiein.repository;
 
 import ai.jamerly.tiein.entity.MCPPrompt;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface MCPPromptRepository extends JpaRepository<MCPPrompt, Long> {
     Optional<MCPPrompt> findByName(String name);
-    Page<MCPPrompt> findByGroupIdsJsonContaining(String groupId, Pageable pageable);
+    List<MCPPrompt> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @Query(value = "select p from MCPPrompt p join MCPPromptGroupMember m on m.memberId = p.id where m.groupId = :groupId",
+            countQuery = "select count(m) from MCPPromptGroupMember m where m.groupId = :groupId")
+    Page<MCPPrompt> findByGroupId(Long groupId, Pageable pageable);
 }
\ No newline at end of file
@@ -0,0 +1,8 @@
+package ai.jamerly.tiein.repository;
+
+import ai.jamerly.tiein.entity.MCPResourceGroupMember;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface MCPResourceGroupMemberRepository extends GroupMembershipRepository<MCPResourceGroupMember> {
+}
@@ -1,15 +1,22 @@
 package ai.jamerly.tiein.repository;
 
 import ai.jamerly.tiein.entity.MCPResource;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface MCPResourceRepository extends JpaRepository<MCPResource, Long> {
     Optional<MCPResource> findByUri(String uri);
-    Page<MCPResource> findByGroupIdsJsonContaining(String groupId, Pageable pageable);
+    List<MCPResource> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @Query(value = "select r from MCPResource r join MCPResourceGroupMember m on m.memberId = r.id where m.groupId = :groupId",
+            countQuery = "select count(m) from MCPResourceGroupMember m where m.groupId = :groupId")
+    Page<MCPResource> findByGroupId(Long groupId, Pageable pageable);
 }
\ No newline at end of file
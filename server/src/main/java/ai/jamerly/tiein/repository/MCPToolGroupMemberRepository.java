@@ -0,0 +1,8 @@
+package ai.jamerly.tiein.repository;
+
+import ai.jamerly.tiein.entity.MCPToolGroupMember;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface MCPToolGroupMemberRepository extends GroupMembershipRepository<MCPToolGroupMember> {
+}
@@ -1,9 +1,11 @@
 package ai.jamerly.tiein.repository;
 
 import ai.jamerly.tiein.entity.MCPTool;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -12,5 +14,8 @@ import java.util.Optional;
 @Repository
 public interface MCPToolRepository extends JpaRepository<MCPTool, Long> {
     Optional<MCPTool> findByName(String name);
-    List<MCPTool> findByGroupIdsJsonContaining(String groupId);
+    List<MCPTool> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @Query("select t from MCPTool t join MCPToolGroupMember m on m.memberId = t.id where m.groupId = :groupId order by t.id")
+    List<MCPTool> findByGroupId(Long groupId);
 }
\ No newline at end of file
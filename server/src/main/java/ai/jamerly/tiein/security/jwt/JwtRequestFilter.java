@@ -1,6 +1,7 @@
 package ai.jamerly.tiein.security.jwt;
 
 import ai.jamerly.tiein.service.UserService; // Assuming UserService can load UserDetails
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -31,23 +32,25 @@ public class JwtRequestFilter extends OncePerRequestFilter {
         final String authorizationHeader = request.getHeader("Authorization");
 
         String username = null;
-        String jwt = null;
-        String permanentToken = null;
+        Claims claims = null;
+        UserDetails permanentTokenUser = null;
 
         if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
-            jwt = authorizationHeader.substring(7);
+            String jwt = authorizationHeader.substring(7);
             try {
-                username = jwtUtil.extractUsername(jwt);
+                // Verified once here and shared with the rest of the request through a request attribute
+                claims = jwtUtil.extractAllClaims(request, jwt);
+                username = claims.getSubject();
             } catch (Exception e) {
                 // Log or handle invalid JWT token
                 System.err.println("Invalid JWT Token: " + e.getMessage());
             }
         } else if (authorizationHeader != null && authorizationHeader.startsWith("Permanent ")) {
-            permanentToken = authorizationHeader.substring(10);
+            String permanentToken = authorizationHeader.substring(10);
             try {
-                UserDetails userDetails = userService.loadUserByPermanentToken(permanentToken);
-                if (userDetails != null) {
-                    username = userDetails.getUsername();
+                permanentTokenUser = userService.loadUserByPermanentToken(permanentToken);
+                if (permanentTokenUser != null) {
+                    username = permanentTokenUser.getUsername();
                 }
             } catch (Exception e) {
                 System.err.println("Invalid Permanent Token: " + e.getMessage());
@@ -55,12 +58,13 @@ public class JwtRequestFilter extends OncePerRequestFilter {
         }
 
         if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = this.userService.loadUserByUsername(username);
+            // The permanent token lookup already resolved the user
+            UserDetails userDetails = permanentTokenUser != null ? permanentTokenUser : this.userService.loadUserByUsername(username);
 
             boolean authenticated = false;
-            if (jwt != null && jwtUtil.validateToken(jwt, userDetails)) {
+            if (claims != null && jwtUtil.validateToken(claims, userDetails)) {
                 authenticated = true;
-            } else if (permanentToken != null) { // Permanent token already loaded userDetails
+            } else if (permanentTokenUser != null) { // Permanent token already loaded userDetails
                 authenticated = true;
             }
 
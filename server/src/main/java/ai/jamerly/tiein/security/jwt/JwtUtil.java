@@ -1,17 +1,22 @@
 package ai.jamerly.tiein.security.jwt;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 import java.security.Key;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.function.Function;
 
@@ -24,6 +29,34 @@ public class JwtUtil {
     @Value("${jwt.expiration}")
     private long expiration;
 
+    @Value("${jwt.claims-cache-size:10000}")
+    private int claimsCacheSize;
+
+    /**
+     * Request attribute under which {@link JwtRequestFilter} shares the verified claims of the bearer token.
+     */
+    public static final String CLAIMS_ATTRIBUTE = JwtUtil.class.getName() + ".claims";
+
+    // Built once, decoding the secret and setting up the parser is not free
+    private Key signKey;
+    private JwtParser parser;
+
+    // Verified token -> claims, bounded LRU. Entries are only used until the token expires.
+    private Map<String, Claims> claimsCache;
+
+    @PostConstruct
+    public void init() {
+        byte[] keyBytes = Decoders.BASE64.decode(secret);
+        signKey = Keys.hmacShaKeyFor(keyBytes);
+        parser = Jwts.parserBuilder().setSigningKey(signKey).build();
+        claimsCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Claims> eldest) {
+                return size() > claimsCacheSize;
+            }
+        });
+    }
+
     public String extractUsername(String token) {
         return extractClaim(token, Claims::getSubject);
     }
@@ -37,17 +70,45 @@ public class JwtUtil {
         return claimsResolver.apply(claims);
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder().setSigningKey(getSignKey()).build().parseClaimsJws(token).getBody();
+    /**
+     * Verifies the token and returns its claims.
+     *
+     * @throws io.jsonwebtoken.JwtException If the token is malformed, tampered with or expired.
+     */
+    public Claims extractAllClaims(String token) {
+        Claims cached = claimsCache.get(token);
+        if (cached != null) {
+            if (cached.getExpiration() == null || cached.getExpiration().after(new Date())) {
+                return cached;
+            }
+            claimsCache.remove(token);
+        }
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        claimsCache.put(token, claims);
+        return claims;
     }
 
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    /**
+     * Returns the verified claims of the request's bearer token, as shared by {@link JwtRequestFilter},
+     * verifying the token only if the filter has not done so.
+     */
+    public Claims extractAllClaims(HttpServletRequest request, String token) {
+        Object shared = request.getAttribute(CLAIMS_ATTRIBUTE);
+        if (shared instanceof Claims claims) {
+            return claims;
+        }
+        Claims claims = extractAllClaims(token);
+        request.setAttribute(CLAIMS_ATTRIBUTE, claims);
+        return claims;
     }
 
     public Boolean validateToken(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+        return validateToken(extractAllClaims(token), userDetails);
+    }
+
+    public Boolean validateToken(Claims claims, UserDetails userDetails) {
+        final String username = claims.getSubject();
+        return (username.equals(userDetails.getUsername()) && !claims.getExpiration().before(new Date()));
     }
 
     public String generateToken(String username) {
@@ -65,7 +126,6 @@ public class JwtUtil {
     }
 
     private Key getSignKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(secret);
-        return Keys.hmacShaKeyFor(keyBytes);
+        return signKey;
     }
 }
@@ -0,0 +1,179 @@
+package ai.jamerly.tiein.service;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide, immutable snapshot of a catalog (tools, resources or prompts) together with a
+ * group id to entity index.
+ * <p>
+ * The snapshot is loaded from the database on first use. Mutations do not reload it: they copy the
+ * current snapshot, apply the single change and publish the copy, so readers never take a lock and
+ * never see a half-built index. The snapshot holds its own copies of the entities and hands out
+ * copies, so callers may modify what they get. Changes made on other nodes arrive through
+ * {@link CatalogCacheSync}; as a backstop the snapshot is reloaded once it is older than its max age.
+ *
+ * @param <T> The catalog entity type.
+ */
+public class CatalogCache<T> {
+
+    private final String name;
+    private final Supplier<List<T>> loader;
+    private final Supplier<T> factory;
+    private final Function<T, Long> idExtractor;
+    private final Function<T, List<Long>> groupIdsExtractor;
+
+    private volatile long maxAgeMillis = Long.MAX_VALUE;
+    private volatile Snapshot<T> snapshot;
+
+    public CatalogCache(String name, Supplier<List<T>> loader, Supplier<T> factory,
+                        Function<T, Long> idExtractor, Function<T, List<Long>> groupIdsExtractor) {
+        this.name = name;
+        this.loader = loader;
+        this.factory = factory;
+        this.idExtractor = idExtractor;
+        this.groupIdsExtractor = groupIdsExtractor;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setMaxAgeMillis(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Returns one page of the catalog, optionally restricted to entities in any of the given groups.
+     * Entities are ordered by id.
+     */
+    public Page<T> page(Pageable pageable, List<Long> groupIds) {
+        Snapshot<T> current = current();
+        List<T> filtered;
+        if (groupIds == null || groupIds.isEmpty()) {
+            filtered = current.all();
+        } else if (groupIds.size() == 1) {
+            filtered = current.byGroup().getOrDefault(groupIds.get(0), List.of());
+        } else {
+            Set<T> union = new LinkedHashSet<>();
+            for (Long groupId : groupIds) {
+                union.addAll(current.byGroup().getOrDefault(groupId, List.of()));
+            }
+            filtered = new ArrayList<>(union);
+            filtered.sort(Comparator.comparing(idExtractor));
+        }
+
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(copyAll(filtered), pageable, filtered.size());
+        }
+        int start = (int) Math.min(pageable.getOffset(), filtered.size());
+        int end = Math.min(start + pageable.getPageSize(), filtered.size());
+        return new PageImpl<>(copyAll(filtered.subList(start, end)), pageable, filtered.size());
+    }
+
+    /**
+     * Publishes a snapshot in which the entity with the same id is replaced by (or extended with) {@code entity}.
+     */
+    public synchronized void upsert(T entity) {
+        if (snapshot == null) {
+            return; // Not loaded yet, the first read will see the change
+        }
+        Long id = idExtractor.apply(entity);
+        List<T> all = new ArrayList<>(snapshot.all().size() + 1);
+        for (T existing : snapshot.all()) {
+            if (!id.equals(idExtractor.apply(existing))) {
+                all.add(existing);
+            }
+        }
+        all.add(copy(entity));
+        snapshot = build(all, snapshot.loadedAt());
+    }
+
+    /**
+     * Publishes a snapshot without the entity with the given id.
+     */
+    public synchronized void remove(Long id) {
+        if (snapshot == null) {
+            return;
+        }
+        List<T> all = new ArrayList<>(snapshot.all().size());
+        for (T existing : snapshot.all()) {
+            if (!id.equals(idExtractor.apply(existing))) {
+                all.add(existing);
+            }
+        }
+        snapshot = build(all, snapshot.loadedAt());
+    }
+
+    /**
+     * Drops the snapshot so that the next read reloads it from the database.
+     */
+    public synchronized void invalidate() {
+        snapshot = null;
+    }
+
+    private Snapshot<T> current() {
+        Snapshot<T> current = snapshot;
+        if (current == null || isExpired(current)) {
+            synchronized (this) {
+                if (snapshot == null || isExpired(snapshot)) {
+                    long loadedAt = System.currentTimeMillis();
+                    snapshot = build(copyAll(loader.get()), loadedAt);
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    private boolean isExpired(Snapshot<T> current) {
+        return System.currentTimeMillis() - current.loadedAt() > maxAgeMillis;
+    }
+
+    private List<T> copyAll(List<T> entities) {
+        List<T> copies = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            copies.add(copy(entity));
+        }
+        return copies;
+    }
+
+    private T copy(T entity) {
+        T copy = factory.get();
+        BeanUtils.copyProperties(entity, copy);
+        return copy;
+    }
+
+    private Snapshot<T> build(List<T> entities, long loadedAt) {
+        entities.sort(Comparator.comparing(idExtractor));
+        Map<Long, List<T>> byGroup = new HashMap<>();
+        for (T entity : entities) {
+            List<Long> groupIds = groupIdsExtractor.apply(entity);
+            if (groupIds == null) {
+                continue;
+            }
+            for (Long groupId : new LinkedHashSet<>(groupIds)) {
+                byGroup.computeIfAbsent(groupId, key -> new ArrayList<>()).add(entity);
+            }
+        }
+        Map<Long, List<T>> immutableByGroup = new HashMap<>();
+        byGroup.forEach((groupId, list) -> immutableByGroup.put(groupId, Collections.unmodifiableList(list)));
+        return new Snapshot<>(Collections.unmodifiableList(entities), Collections.unmodifiableMap(immutableByGroup), loadedAt);
+    }
+
+    private record Snapshot<T>(List<T> all, Map<Long, List<T>> byGroup, long loadedAt) {
+    }
+}
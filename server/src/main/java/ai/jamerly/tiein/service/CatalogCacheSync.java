@@ -0,0 +1,93 @@
+package ai.jamerly.tiein.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies catalog changes to the {@link CatalogCache} snapshots once the surrounding transaction has
+ * committed, and publishes the catalog name on {@link #INVALIDATION_CHANNEL} so that the other nodes
+ * drop their snapshot and reload it on the next read.
+ */
+@Slf4j
+@Component
+public class CatalogCacheSync {
+
+    public static final String INVALIDATION_CHANNEL = "tiein:catalog:invalidate";
+
+    // Lets a node skip its own messages, its snapshot has already been patched
+    private static final String NODE_ID = UUID.randomUUID().toString();
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${catalog.cache.max-age-seconds:300}")
+    private long maxAgeSeconds;
+
+    private final Map<String, CatalogCache<?>> caches = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(":", 2);
+            if (parts.length != 2 || NODE_ID.equals(parts[1])) {
+                return;
+            }
+            CatalogCache<?> cache = caches.get(parts[0]);
+            if (cache != null) {
+                cache.invalidate();
+            }
+        }, new ChannelTopic(INVALIDATION_CHANNEL));
+    }
+
+    public void register(CatalogCache<?> cache) {
+        cache.setMaxAgeMillis(TimeUnit.SECONDS.toMillis(maxAgeSeconds));
+        caches.put(cache.getName(), cache);
+    }
+
+    public <T> void upsert(CatalogCache<T> cache, T entity) {
+        afterCommit(cache, () -> cache.upsert(entity));
+    }
+
+    public void remove(CatalogCache<?> cache, Long id) {
+        afterCommit(cache, () -> cache.remove(id));
+    }
+
+    private void afterCommit(CatalogCache<?> cache, Runnable change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    applyAndPublish(cache, change);
+                }
+            });
+        } else {
+            applyAndPublish(cache, change);
+        }
+    }
+
+    private void applyAndPublish(CatalogCache<?> cache, Runnable change) {
+        change.run();
+        try {
+            stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, cache.getName() + ":" + NODE_ID);
+        } catch (Exception e) {
+            log.error("Failed to publish {} catalog invalidation: {}", cache.getName(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package ai.jamerly.tiein.service;
+
+import ai.jamerly.tiein.entity.MCPChatBase;
+import ai.jamerly.tiein.repository.MCPChatBaseRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node-local cache of {@link MCPChatBase} by id and by appId.
+ * <p>
+ * Entries are dropped after a chat base is changed or deleted, once the surrounding transaction has
+ * committed, and the id is published on {@link #INVALIDATION_CHANNEL} so that the other nodes drop
+ * theirs too. Entries older than {@code chat.base.cache.ttl-seconds} are reloaded, so a node that missed
+ * an invalidation message serves the stale row for at most that long. Cached instances are shared and
+ * must not be modified by callers.
+ */
+@Slf4j
+@Component
+public class ChatBaseCache {
+
+    public static final String INVALIDATION_CHANNEL = "tiein:chatbase:invalidate";
+
+    @Autowired
+    private MCPChatBaseRepository mcpChatBaseRepository;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${chat.base.cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    private final Map<Long, Entry> byId = new ConcurrentHashMap<>();
+    private final Map<String, Long> idByAppId = new ConcurrentHashMap<>();
+
+    // Bumped on every eviction, so that a load racing with an eviction does not cache a stale row
+    private final AtomicLong generation = new AtomicLong();
+
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            try {
+                evictLocal(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8)));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring malformed chat base invalidation message");
+            }
+        }, new ChannelTopic(INVALIDATION_CHANNEL));
+    }
+
+    public Optional<MCPChatBase> getById(Long id) {
+        MCPChatBase cached = getFresh(id);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long loadGeneration = generation.get();
+        Optional<MCPChatBase> loaded = mcpChatBaseRepository.findById(id);
+        loaded.ifPresent(chatBase -> put(chatBase, loadGeneration));
+        return loaded;
+    }
+
+    public Optional<MCPChatBase> getByAppId(String appId) {
+        Long id = idByAppId.get(appId);
+        if (id != null) {
+            MCPChatBase cached = getFresh(id);
+            // The mapping is only trusted while the fresh row still carries this appId
+            if (cached != null && appId.equals(cached.getAppId())) {
+                return Optional.of(cached);
+            }
+        }
+        long loadGeneration = generation.get();
+        Optional<MCPChatBase> loaded = mcpChatBaseRepository.findByAppId(appId);
+        loaded.ifPresent(chatBase -> put(chatBase, loadGeneration));
+        return loaded;
+    }
+
+    /**
+     * Drops the chat base on this node and on every other node, after the current transaction commits.
+     */
+    public void invalidate(Long id) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictAndPublish(id);
+                }
+            });
+        } else {
+            evictAndPublish(id);
+        }
+    }
+
+    private void evictAndPublish(Long id) {
+        evictLocal(id);
+        try {
+            stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, String.valueOf(id));
+        } catch (Exception e) {
+            log.error("Failed to publish chat base invalidation for {}: {}", id, e.getMessage());
+        }
+    }
+
+    private void evictLocal(Long id) {
+        // The bump must come before the removal, see put()
+        generation.incrementAndGet();
+        byId.remove(id);
+        idByAppId.values().removeIf(id::equals);
+    }
+
+    private MCPChatBase getFresh(Long id) {
+        Entry entry = byId.get(id);
+        if (entry == null || System.currentTimeMillis() - entry.loadedAt() > TimeUnit.SECONDS.toMillis(ttlSeconds)) {
+            return null;
+        }
+        return entry.chatBase();
+    }
+
+    // The generation is checked while holding the map bin for the id, so an eviction either bumps it
+    // before the check (and the load is dropped) or removes the entry after it has been stored
+    private void put(MCPChatBase chatBase, long loadGeneration) {
+        long loadedAt = System.currentTimeMillis();
+        byId.compute(chatBase.getId(), (id, current) -> {
+            if (generation.get() != loadGeneration) {
+                return current;
+            }
+            if (current != null && current.chatBase().getAppId() != null
+                    && !current.chatBase().getAppId().equals(chatBase.getAppId())) {
+                idByAppId.remove(current.chatBase().getAppId(), id); // The appId was regenerated
+            }
+            if (chatBase.getAppId() != null) {
+                idByAppId.put(chatBase.getAppId(), id);
+            }
+            return new Entry(chatBase, loadedAt);
+        });
+    }
+
+    private record Entry(MCPChatBase chatBase, long loadedAt) {
+    }
+}
@@ -14,7 +14,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -35,6 +37,18 @@ public class ChatBaseService {
     @Autowired
     private OpenAIRequestAssembler openAIRequestAssembler;
 
+    @Autowired
+    private GroupMembershipService groupMembershipService;
+
+    @Autowired
+    private SessionSummaryService sessionSummaryService;
+
+    @Autowired
+    private ChatBaseCache chatBaseCache;
+
+    @Autowired
+    private GreetingCache greetingCache;
+
     public Page<MCPChatBase> getAllChatBases(Pageable pageable) {
         return mcpChatBaseRepository.findAll(pageable);
     }
@@ -43,10 +57,13 @@ public class ChatBaseService {
         return mcpChatBaseRepository.findById(id);
     }
 
+    @Transactional
     public MCPChatBase createChatBase(MCPChatBase chatBase) {
         chatBase.setAppId(generateAppId());
         // groupIdsJson will be set by the entity's setGroupIds method
-        return mcpChatBaseRepository.save(chatBase);
+        MCPChatBase savedChatBase = mcpChatBaseRepository.save(chatBase);
+        groupMembershipService.replaceChatBaseGroups(savedChatBase.getId(), savedChatBase.getGroupIds());
+        return savedChatBase;
     }
 
     private String generateAppId() {
@@ -55,6 +72,7 @@ public class ChatBaseService {
         return (uuid1 + uuid2);
     }
 
+    @Transactional
     public MCPChatBase updateChatBase(Long id, MCPChatBase chatBaseDetails) {
         return mcpChatBaseRepository.findById(id)
                 .map(chatBase -> {
@@ -64,20 +82,30 @@ public class ChatBaseService {
                     chatBase.setStatus(chatBaseDetails.getStatus());
                     chatBase.setRequireAuth(chatBaseDetails.getRequireAuth());
                     chatBase.setAuthUrl(chatBaseDetails.getAuthUrl());
+                    chatBase.setHistoryMode(chatBaseDetails.getHistoryMode());
+                    chatBase.setHistoryLimit(chatBaseDetails.getHistoryLimit());
                     chatBase.setGroupIds(chatBaseDetails.getGroupIds()); // This will update groupIdsJson internally
-                    return mcpChatBaseRepository.save(chatBase);
+                    MCPChatBase savedChatBase = mcpChatBaseRepository.save(chatBase);
+                    groupMembershipService.replaceChatBaseGroups(savedChatBase.getId(), savedChatBase.getGroupIds());
+                    chatBaseCache.invalidate(savedChatBase.getId());
+                    return savedChatBase;
                 }).orElse(null);
     }
 
+    @Transactional
     public void deleteChatBase(Long id) {
         mcpChatBaseRepository.deleteById(id);
+        groupMembershipService.replaceChatBaseGroups(id, List.of());
+        chatBaseCache.invalidate(id);
     }
 
     public MCPChatBase regenerateAppId(Long id) {
         return mcpChatBaseRepository.findById(id)
                 .map(chatBase -> {
                     chatBase.setAppId(generateAppId());
-                    return mcpChatBaseRepository.save(chatBase);
+                    MCPChatBase savedChatBase = mcpChatBaseRepository.save(chatBase);
+                    chatBaseCache.invalidate(id);
+                    return savedChatBase;
                 }).orElse(null);
     }
 
@@ -85,7 +113,9 @@ public class ChatBaseService {
         return mcpChatBaseRepository.findById(id)
                 .map(chatBase -> {
                     chatBase.setStatus(status);
-                    return mcpChatBaseRepository.save(chatBase);
+                    MCPChatBase savedChatBase = mcpChatBaseRepository.save(chatBase);
+                    chatBaseCache.invalidate(id);
+                    return savedChatBase;
                 }).orElse(null);
     }
 
@@ -94,52 +124,34 @@ public class ChatBaseService {
     }
 
     public MCPChatBase getChatBaseByAppId(String appId){
-        return  mcpChatBaseRepository.findByAppId(appId).orElse(null);
+        return chatBaseCache.getByAppId(appId).orElse(null);
     }
     public InitResult getWelcomeMessage(String appId, String language, String userProfileJson) {
-        Optional<MCPChatBase> chatBaseOptional = mcpChatBaseRepository.findByAppId(appId);
+        Optional<MCPChatBase> chatBaseOptional = chatBaseCache.getByAppId(appId);
         InitResult initResult = new InitResult();
         if (chatBaseOptional.isEmpty()) {
             initResult.setMessage("ChatBase not found.");
+            return initResult;
         }
         MCPChatBase chatBase = chatBaseOptional.get();
 
-        if (chatBase.getGreeting() == null || chatBase.getGreeting().isEmpty()) {
-            chatBase.setGreeting("Welcome");
-        }
+        // The cached chat base is shared, so the default greeting is not written back to it
+        String baseGreeting = chatBase.getGreeting() == null || chatBase.getGreeting().isEmpty() ? "Welcome" : chatBase.getGreeting();
 
-        String prompt = String.format("Given the user profile %s.\n " +
-                "Write a friendly welcoming greeting in %s for \"%s\" and provide the result in JSON format. " +
-                "```{\"greeting\" : \"generated greeting\"  }```", userProfileJson, language, chatBase.getGreeting());
-        AIRequest aiRequest = new AIRequest();
-        aiRequest.setPrompt(prompt);
-        aiRequest.setModel("gpt-3.5-turbo"); // Or another appropriate model
-        aiRequest.setStream(Boolean.FALSE); // Not streaming for a single welcome message
-        // Invoke OpenAIRequestAssembler and block to get the result
-        // This is a simplified approach. For production, consider async handling or a dedicated AI service.
-        Flux<String> aiResponseFlux = openAIRequestAssembler.invoke(aiRequest);
-        List<String> greetingJSON = aiResponseFlux.collectList().block().stream().map(t->{
-            if(!StringUtil.isBlank(t)){
-                if( "[DONE]".equals(t.trim()) ){
-                    return "";
-                }else{
-                    JSONObject jsonObject = JSONObject.parseObject(t.trim());
-                    return jsonObject.getString("chunk");
-                }
-            }
-            return "";
-        }).collect(Collectors.toList());
-        String JSONString =  greetingJSON.stream().collect(Collectors.joining());
-        JSONObject greeting = JSONObject.parseObject(JSONString);
+        // Generated greetings are cached; on a miss the static greeting is returned right away
+        // and the generated one is filled in asynchronously for the next visitor
+        InitResult cached = greetingCache.get(chatBase, baseGreeting, language, userProfileJson);
+        if (cached != null) {
+            return cached;
+        }
         initResult.setSuccess(Boolean.TRUE);
-        initResult.setUserId(greeting.getString("userId"));
-        initResult.setMessage(greeting.getString("greeting"));
+        initResult.setMessage(baseGreeting);
         return initResult;
     }
 
     // Modified processChatMessage method
     public Flux<String> processChatMessage(Long chatBaseId, UUID sessionId, String externalUserId, String userMessage, String userProfileJson) {
-        Optional<MCPChatBase> chatBaseOptional = mcpChatBaseRepository.findById(chatBaseId);
+        Optional<MCPChatBase> chatBaseOptional = chatBaseCache.getById(chatBaseId);
         if (chatBaseOptional.isEmpty()) {
             return Flux.just("Error: ChatBase not found.");
         }
@@ -167,7 +179,16 @@ public class ChatBaseService {
         systemMessage.put("content", systemContent);
         historicalMessages.add(systemMessage);
         // Use MCPChatHistoryService and chatSession.getId()
-        List<ChatHistory> chatHistories = mcpChatHistoryService.queryBySessionId(chatSession.getId());
+        List<ChatHistory> chatHistories = mcpChatHistoryService.queryWindowBySessionId(chatSession.getId(),
+                chatBase.getHistoryMode(), chatBase.getHistoryLimit());
+        if (!StringUtil.isBlank(chatSession.getSummary())) {
+            // Older turns are carried by the rolling summary instead of verbatim
+            Map<String, Object> summaryMessage = new HashMap<>();
+            summaryMessage.put("role", "system");
+            summaryMessage.put("content", "Summary of the earlier conversation: " + chatSession.getSummary());
+            historicalMessages.add(summaryMessage);
+            chatHistories = sessionSummaryService.unsummarizedTurns(chatSession, chatHistories);
+        }
         for( int i=0;i<chatHistories.size();i++){
             Map<String, Object> userMessageMap = new HashMap<>();
             userMessageMap.put("role", "user");
@@ -193,32 +214,28 @@ public class ChatBaseService {
 
         // Invoke OpenAIRequestAssembler
         Flux<String> aiResponseFlux = openAIRequestAssembler.invoke(aiRequest);
-        // Collect the full response for saving history, but return the Flux for streaming
-        return aiResponseFlux.doOnComplete(() -> {
-            // This block will execute when the Flux completes (i.e., full response received)
-            // You might need to collect the full response here if you want to save it after streaming
-            // For now, let's assume the history saving will be handled by a separate mechanism
-            // or that the OpenAIRequestAssembler handles it internally if it's a tool call.
-            // If you need to save the full AI response here, you'd need to collect it first.
-            StringBuffer serverResponse = new StringBuffer();
-            aiResponseFlux.collectList().map(chunks -> {
-                for( int i = 0; i< chunks.size();i++){
-                    if( !"[DONE]".equals( chunks.get(i)) ) {
-                        JSONObject jsonObject = JSONObject.parseObject(chunks.get(i));
-                        serverResponse.append(jsonObject.getString("chunk"));
+        // Accumulate the reply while it streams to the client and persist it once the stream completes,
+        // instead of subscribing to aiResponseFlux a second time (which would replay the whole OpenAI call)
+        StringBuilder serverResponse = new StringBuilder();
+        return aiResponseFlux
+                .doOnNext(chunk -> {
+                    if (!StringUtil.isBlank(chunk) && !"[DONE]".equals(chunk.trim())) {
+                        serverResponse.append(JSONObject.parseObject(chunk).getString("chunk"));
+                    }
+                })
+                .doOnComplete(() -> Schedulers.boundedElastic().schedule(() -> {
+                    ChatHistory chatHistory = new ChatHistory();
+                    chatHistory.setChatBaseId(chatBaseId);
+                    chatHistory.setOuterUserId(externalUserId); // Using externalUserId
+                    chatHistory.setUserMessage(userMessage);
+                    chatHistory.setChatSessionId(chatSession.getId()); // Set ChatSession
+                    chatHistory.setAiResponse(serverResponse.toString());
+                    try {
+                        mcpChatHistoryService.enqueueChatHistory(chatHistory);
+                        sessionSummaryService.refreshIfNeeded(chatSession.getId());
+                    } catch (Exception e) {
+                        logger.error("Failed to save chat history for session {}: {}", chatSession.getId(), e.getMessage());
                     }
-                }
-                return String.join("", chunks);
-            }).subscribe(fullResponse -> {
-                ChatHistory chatHistory = new ChatHistory(); // Changed from ChatHistory
-                chatHistory.setChatBaseId(chatBaseId);
-                chatHistory.setOuterUserId(externalUserId); // Using externalUserId
-                chatHistory.setUserMessage(userMessage);
-                chatHistory.setChatSessionId(chatSession.getId()); // Set ChatSession
-                String message = serverResponse.toString();
-                chatHistory.setAiResponse(message);
-                mcpChatHistoryService.createChatHistory(chatHistory); // Changed from chatHistoryService
-            });
-        });
+                }));
     }
-}
\ No newline at end of file
+}
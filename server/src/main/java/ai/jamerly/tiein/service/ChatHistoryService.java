@@ -1,13 +1,21 @@
 package ai.jamerly.tiein.service;
 
 import ai.jamerly.tiein.entity.ChatHistory;
+import ai.jamerly.tiein.entity.MCPChatBase;
 import ai.jamerly.tiein.repository.MCPChatHistoryRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
 
 @Service
@@ -16,6 +24,23 @@ public class ChatHistoryService {
     @Autowired
     private MCPChatHistoryRepository mcpChatHistoryRepository;
 
+    @Autowired
+    private ChatHistoryWriter chatHistoryWriter;
+
+    @Autowired
+    private HotSessionCache hotSessionCache;
+
+    @Value("${chat.history.window-mode:LAST_TURNS}")
+    private MCPChatBase.HistoryMode defaultWindowMode;
+
+    @Value("${chat.history.window-turns:20}")
+    private int defaultWindowTurns;
+
+    @Value("${chat.history.window-tokens:2000}")
+    private int defaultWindowTokens;
+
+    private static final int WINDOW_FETCH_SIZE = 20;
+
     public Page<ChatHistory> getChatHistory(Pageable pageable) {
         return mcpChatHistoryRepository.findAll(pageable);
     }
@@ -31,7 +56,148 @@ public class ChatHistoryService {
         return mcpChatHistoryRepository.findByChatSessionId(sessionId);
     }
 
+    /**
+     * Loads the most recent turns of a session for the model context, oldest first.
+     *
+     * @param mode  How the window is bounded, {@code null} for the configured default.
+     * @param limit Number of turns or token budget, {@code null} or non-positive for the configured default.
+     */
+    public List<ChatHistory> queryWindowBySessionId(UUID sessionId, MCPChatBase.HistoryMode mode, Integer limit) {
+        if (mode == null) {
+            mode = defaultWindowMode;
+        }
+        int windowLimit = limit != null && limit > 0 ? limit
+                : mode == MCPChatBase.HistoryMode.TOKEN_BUDGET ? defaultWindowTokens : defaultWindowTurns;
+
+        // Hot sessions are served from the Redis ring, MySQL is only read on a miss
+        // or when the window reaches further back than the ring
+        List<ChatHistory> recent = hotSessionCache.getRecentTurns(sessionId);
+        if (recent == null && hotSessionCache.isEnabled()) {
+            recent = seedHotSession(sessionId);
+        }
+        if (recent != null) {
+            List<ChatHistory> window = selectWindow(recent, mode, windowLimit, recent.size() < hotSessionCache.getMaxTurns());
+            if (window != null) {
+                return window;
+            }
+        }
+
+        List<ChatHistory> window = new ArrayList<>();
+        if (mode == MCPChatBase.HistoryMode.TOKEN_BUDGET) {
+            int used = 0;
+            Pageable pageable = PageRequest.of(0, WINDOW_FETCH_SIZE);
+            // Walk back from the newest turn a page at a time until the budget is used up
+            outer:
+            while (true) {
+                Slice<ChatHistory> slice = mcpChatHistoryRepository.findByChatSessionIdOrderByTimestampDescIdDesc(sessionId, pageable);
+                for (ChatHistory chatHistory : slice) {
+                    used += estimateTokens(chatHistory);
+                    if (used > windowLimit) {
+                        break outer;
+                    }
+                    window.add(chatHistory);
+                }
+                if (!slice.hasNext()) {
+                    break;
+                }
+                pageable = slice.nextPageable();
+            }
+        } else {
+            window.addAll(mcpChatHistoryRepository
+                    .findByChatSessionIdOrderByTimestampDescIdDesc(sessionId, PageRequest.of(0, windowLimit))
+                    .getContent());
+        }
+        Collections.reverse(window);
+        return window;
+    }
+
+    /**
+     * Picks the window out of the cached recent turns (oldest first).
+     *
+     * @param complete Whether {@code recent} holds the whole session.
+     * @return The window, or {@code null} if it reaches further back than {@code recent}.
+     */
+    private static List<ChatHistory> selectWindow(List<ChatHistory> recent, MCPChatBase.HistoryMode mode, int windowLimit, boolean complete) {
+        if (mode == MCPChatBase.HistoryMode.TOKEN_BUDGET) {
+            int used = 0;
+            for (int i = recent.size() - 1; i >= 0; i--) {
+                used += estimateTokens(recent.get(i));
+                if (used > windowLimit) {
+                    return new ArrayList<>(recent.subList(i + 1, recent.size()));
+                }
+            }
+            return complete ? recent : null;
+        }
+        if (windowLimit <= recent.size()) {
+            return new ArrayList<>(recent.subList(recent.size() - windowLimit, recent.size()));
+        }
+        return complete ? recent : null;
+    }
+
+    // Rough estimate of ~4 characters per token, plus a few tokens of per-message overhead
+    private static int estimateTokens(ChatHistory chatHistory) {
+        int chars = length(chatHistory.getUserMessage()) + length(chatHistory.getAiResponse());
+        return chars / 4 + 8;
+    }
+
+    private static int length(String text) {
+        return text == null ? 0 : text.length();
+    }
+
     public ChatHistory createChatHistory(ChatHistory chatHistory) {
         return mcpChatHistoryRepository.save(chatHistory);
     }
+
+    /**
+     * Queues the row for a batched insert instead of saving it immediately, and appends it to the
+     * session's hot-session ring. The id is not assigned on return.
+     */
+    public void enqueueChatHistory(ChatHistory chatHistory) {
+        chatHistoryWriter.enqueue(chatHistory);
+        hotSessionCache.append(chatHistory);
+    }
+
+    /**
+     * Seeds the ring of a session from MySQL plus the turns still queued in the write-behind writer,
+     * which MySQL does not have yet.
+     *
+     * @return The seeded turns, oldest first.
+     */
+    private List<ChatHistory> seedHotSession(UUID sessionId) {
+        int maxTurns = hotSessionCache.getMaxTurns();
+        // Pending turns are read before MySQL: a turn written in between is then found in MySQL, whereas
+        // reading MySQL first could miss it in both places
+        List<ChatHistory> pending = chatHistoryWriter.getPending(sessionId);
+        List<ChatHistory> recent = new ArrayList<>(mcpChatHistoryRepository
+                .findByChatSessionIdOrderByTimestampDescIdDesc(sessionId, PageRequest.of(0, maxTurns))
+                .getContent());
+        Collections.reverse(recent);
+        for (ChatHistory queued : pending) {
+            if (recent.stream().noneMatch(persisted -> isSameTurn(persisted, queued))) {
+                recent.add(queued);
+            }
+        }
+        recent.sort(Comparator.comparing(ChatHistory::getTimestamp, Comparator.nullsFirst(Comparator.naturalOrder())));
+        if (recent.size() > maxTurns) {
+            recent = new ArrayList<>(recent.subList(recent.size() - maxTurns, recent.size()));
+        }
+        hotSessionCache.seed(sessionId, recent);
+
+        // A turn queued while seeding found no ring to append to; drop the ring so that the next read
+        // seeds it again with that turn
+        for (ChatHistory queued : chatHistoryWriter.getPending(sessionId)) {
+            if (pending.stream().noneMatch(row -> row == queued)) {
+                hotSessionCache.evict(sessionId);
+                break;
+            }
+        }
+        return recent;
+    }
+
+    private static boolean isSameTurn(ChatHistory persisted, ChatHistory queued) {
+        return persisted.getTimestamp() != null && queued.getTimestamp() != null
+                && persisted.getTimestamp().getTime() == queued.getTimestamp().getTime()
+                && Objects.equals(persisted.getUserMessage(), queued.getUserMessage())
+                && Objects.equals(persisted.getAiResponse(), queued.getAiResponse());
+    }
 }
@@ -0,0 +1,233 @@
+package ai.jamerly.tiein.service;
+
+import ai.jamerly.tiein.entity.ChatHistory;
+import ai.jamerly.tiein.repository.MCPChatHistoryRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind queue for {@link ChatHistory} rows.
+ * <p>
+ * {@code ChatHistory} ids are generated by IDENTITY, which stops Hibernate from batching inserts, so
+ * rows are queued here and written by a single background thread as JDBC batch inserts, either when
+ * {@code chat.history.batch-size} rows are pending or every {@code chat.history.flush-interval-ms}.
+ * Pending rows are flushed on shutdown. Rows that have been queued but not written yet can be read
+ * back per session with {@link #getPending(UUID)}.
+ */
+@Slf4j
+@Component
+public class ChatHistoryWriter {
+
+    private static final String INSERT_SQL = "insert into chatbase_history "
+            + "(chat_base_id, outer_user_id, user_message, ai_response, timestamp, chat_session_id) values (?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MCPChatHistoryRepository mcpChatHistoryRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.history.batch-size:100}")
+    private int batchSize;
+
+    @Value("${chat.history.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${chat.history.queue-capacity:10000}")
+    private int queueCapacity;
+
+    private BlockingQueue<ChatHistory> queue;
+
+    // Rows queued or being written, by session, until their insert has completed (or failed)
+    private final Map<UUID, List<ChatHistory>> pending = new ConcurrentHashMap<>();
+    private Thread writerThread;
+    private volatile boolean running;
+
+    private Timer flushTimer;
+    private Counter failedRows;
+
+    @PostConstruct
+    public void start() {
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        Gauge.builder("chat.history.queue.depth", queue, BlockingQueue::size)
+                .description("Chat history rows waiting to be written")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("chat.history.flush")
+                .description("Latency of chat history batch inserts")
+                .register(meterRegistry);
+        failedRows = Counter.builder("chat.history.failed")
+                .description("Chat history rows that could not be written")
+                .register(meterRegistry);
+
+        running = true;
+        writerThread = Thread.ofPlatform().name("chat-history-writer").daemon(true).start(this::run);
+    }
+
+    /**
+     * Queues a row for the next batch. When the queue is full the row is saved on the calling thread,
+     * so history is never dropped.
+     */
+    public void enqueue(ChatHistory chatHistory) {
+        if (chatHistory.getTimestamp() == null) {
+            chatHistory.setTimestamp(new Date()); // @CreationTimestamp does not apply to JDBC inserts
+        }
+        addPending(chatHistory);
+        if (!running || !queue.offer(chatHistory)) {
+            log.warn("Chat history queue is full or stopped, saving row synchronously");
+            try {
+                saveOne(chatHistory);
+            } finally {
+                removePending(chatHistory);
+            }
+        }
+    }
+
+    /**
+     * @return The rows of the session that have been queued but not written to MySQL yet, in queue order.
+     */
+    public List<ChatHistory> getPending(UUID sessionId) {
+        List<ChatHistory> rows = pending.get(sessionId);
+        if (rows == null) {
+            return List.of();
+        }
+        synchronized (rows) {
+            return new ArrayList<>(rows);
+        }
+    }
+
+    private void addPending(ChatHistory chatHistory) {
+        pending.compute(chatHistory.getChatSessionId(), (sessionId, rows) -> {
+            List<ChatHistory> updated = rows != null ? rows : new ArrayList<>();
+            synchronized (updated) {
+                updated.add(chatHistory);
+            }
+            return updated;
+        });
+    }
+
+    private void removePending(ChatHistory chatHistory) {
+        pending.computeIfPresent(chatHistory.getChatSessionId(), (sessionId, rows) -> {
+            synchronized (rows) {
+                rows.removeIf(row -> row == chatHistory);
+                return rows.isEmpty() ? null : rows;
+            }
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false; // The writer thread exits within one flush interval
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Drain whatever is left, including rows the writer thread did not get to
+        List<ChatHistory> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        while (!remaining.isEmpty()) {
+            List<ChatHistory> batch = remaining.subList(0, Math.min(batchSize, remaining.size()));
+            flush(new ArrayList<>(batch));
+            batch.clear();
+        }
+    }
+
+    private void run() {
+        List<ChatHistory> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                ChatHistory first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                // Keep collecting until the batch is full or the flush interval has elapsed
+                while (batch.size() < batchSize) {
+                    long remainingNanos = deadline - System.nanoTime();
+                    if (remainingNanos <= 0) {
+                        break;
+                    }
+                    ChatHistory next = queue.poll(remainingNanos, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+                flush(batch);
+                batch = new ArrayList<>(batchSize);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (!batch.isEmpty()) {
+            flush(batch);
+        }
+    }
+
+    private void flush(List<ChatHistory> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, chatHistory) -> {
+                ps.setLong(1, chatHistory.getChatBaseId());
+                ps.setString(2, chatHistory.getOuterUserId());
+                ps.setString(3, chatHistory.getUserMessage());
+                ps.setString(4, chatHistory.getAiResponse());
+                ps.setTimestamp(5, new Timestamp(chatHistory.getTimestamp().getTime()));
+                ps.setBytes(6, toBytes(chatHistory.getChatSessionId()));
+            });
+        } catch (Exception e) {
+            log.error("Batch insert of {} chat history rows failed, retrying one by one: {}", batch.size(), e.getMessage());
+            batch.forEach(this::saveOne);
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            batch.forEach(this::removePending);
+        }
+    }
+
+    private void saveOne(ChatHistory chatHistory) {
+        try {
+            mcpChatHistoryRepository.save(chatHistory);
+        } catch (Exception e) {
+            failedRows.increment();
+            log.error("Failed to save chat history for session {}: {}", chatHistory.getChatSessionId(), e.getMessage());
+        }
+    }
+
+    // Same BINARY(16) layout Hibernate uses for UUID columns on MySQL
+    private static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+}
@@ -0,0 +1,268 @@
+package ai.jamerly.tiein.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Request rate and concurrent stream quotas for the public chat client endpoints, per chat base
+ * ({@code appId}) and per visitor ({@code userId} claim of the chat token, or the client address for
+ * anonymous visitors).
+ * <p>
+ * Rates are token buckets: {@code permits-per-second} refill up to {@code burst}. In {@code local} mode
+ * the buckets and stream counters live on this node, so the effective limit is multiplied by the
+ * number of nodes. In {@code redis} mode they are shared through Redis scripts; if Redis cannot be
+ * reached the node falls back to its local state rather than rejecting traffic. A rate or stream
+ * limit of 0 disables that check.
+ * <p>
+ * In Redis a stream slot is a lease: a member of a sorted set scored by its expiry, so a slot that is
+ * never released (the node died mid-stream) only counts until {@code stream-lease-seconds} have passed.
+ */
+@Slf4j
+@Component
+public class ClientRateLimiter {
+
+    public static final String APP = "app";
+    public static final String USER = "user";
+
+    private static final String KEY_PREFIX = "tiein:ratelimit:";
+
+    // Refills by elapsed time (Redis clock, so nodes agree) and takes one token if available
+    private static final RedisScript<Long> TAKE_TOKEN = new DefaultRedisScript<>(
+            "local rate = tonumber(ARGV[1]) " +
+            "local burst = tonumber(ARGV[2]) " +
+            "local time = redis.call('TIME') " +
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) " +
+            "local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'ts') " +
+            "local tokens = tonumber(bucket[1]) or burst " +
+            "local ts = tonumber(bucket[2]) or now " +
+            "tokens = math.min(burst, tokens + math.max(0, now - ts) * rate / 1000) " +
+            "local allowed = 0 " +
+            "if tokens >= 1 then tokens = tokens - 1 allowed = 1 end " +
+            "redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(now)) " +
+            "redis.call('PEXPIRE', KEYS[1], math.ceil(burst * 1000 / rate) + 1000) " +
+            "return allowed", Long.class);
+
+    // Drops expired leases, then adds lease ARGV[3] expiring in ARGV[2] ms if fewer than ARGV[1] are held
+    static final RedisScript<Long> ACQUIRE_STREAM = new DefaultRedisScript<>(
+            "local time = redis.call('TIME') " +
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) " +
+            "local lease = tonumber(ARGV[2]) " +
+            "redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now) " +
+            "if redis.call('ZCARD', KEYS[1]) >= tonumber(ARGV[1]) then return 0 end " +
+            "redis.call('ZADD', KEYS[1], now + lease, ARGV[3]) " +
+            "redis.call('PEXPIRE', KEYS[1], lease) " +
+            "return 1", Long.class);
+
+    static final RedisScript<Long> RELEASE_STREAM = new DefaultRedisScript<>(
+            "return redis.call('ZREM', KEYS[1], ARGV[1])", Long.class);
+
+    private static final Runnable NO_SLOT = () -> {
+    };
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.rate-limit.mode:local}")
+    private String mode;
+
+    @Value("${chat.rate-limit.app.permits-per-second:20}")
+    private double appPermitsPerSecond;
+
+    @Value("${chat.rate-limit.app.burst:40}")
+    private int appBurst;
+
+    @Value("${chat.rate-limit.app.max-streams:50}")
+    private int appMaxStreams;
+
+    @Value("${chat.rate-limit.user.permits-per-second:1}")
+    private double userPermitsPerSecond;
+
+    @Value("${chat.rate-limit.user.burst:5}")
+    private int userBurst;
+
+    @Value("${chat.rate-limit.user.max-streams:2}")
+    private int userMaxStreams;
+
+    // Upper bound on how long a stream slot is held in Redis if the node holding it goes away
+    @Value("${chat.rate-limit.stream-lease-seconds:600}")
+    private long streamLeaseSeconds;
+
+    @Value("${chat.rate-limit.max-keys:100000}")
+    private int maxKeys;
+
+    private Map<String, TokenBucket> buckets;
+    private Map<String, int[]> streams;
+
+    @PostConstruct
+    public void init() {
+        buckets = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+                return size() > maxKeys;
+            }
+        });
+        // Bounded like the buckets; a slot counter evicted while in use is simply forgotten
+        streams = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+                return size() > maxKeys;
+            }
+        });
+    }
+
+    /**
+     * Takes one request permit for the given scope ({@link #APP} or {@link #USER}) and key.
+     *
+     * @return False if the caller should be answered with 429.
+     */
+    public boolean tryAcquire(String scope, String key) {
+        double rate = APP.equals(scope) ? appPermitsPerSecond : userPermitsPerSecond;
+        int burst = APP.equals(scope) ? appBurst : userBurst;
+        if (rate <= 0 || key == null) {
+            return true;
+        }
+        String bucketKey = KEY_PREFIX + scope + ":" + key;
+        if (isDistributed()) {
+            try {
+                Long result = stringRedisTemplate.execute(TAKE_TOKEN, List.of(bucketKey),
+                        String.valueOf(rate), String.valueOf(Math.max(1, burst)));
+                return countRejected(result != null && result == 1L, scope, "rate");
+            } catch (Exception e) {
+                log.warn("Redis rate limit check failed for {}, using local bucket: {}", bucketKey, e.getMessage());
+            }
+        }
+        TokenBucket bucket = buckets.computeIfAbsent(bucketKey, k -> new TokenBucket(rate, Math.max(1, burst)));
+        return countRejected(bucket.tryTake(), scope, "rate");
+    }
+
+    /**
+     * Takes a concurrent stream slot for both the chat base and the visitor.
+     *
+     * @return A release callback (safe to call more than once), or null if either limit is reached.
+     */
+    public Runnable tryAcquireStream(String appId, String userId) {
+        String appKey = KEY_PREFIX + "streams:" + APP + ":" + appId;
+        String userKey = KEY_PREFIX + "streams:" + USER + ":" + appId + ":" + userId;
+        Runnable releaseApp = acquireSlot(appKey, appMaxStreams);
+        if (releaseApp == null) {
+            countRejected(false, APP, "streams");
+            return null;
+        }
+        Runnable releaseUser = acquireSlot(userKey, userMaxStreams);
+        if (releaseUser == null) {
+            releaseApp.run();
+            countRejected(false, USER, "streams");
+            return null;
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                releaseUser.run();
+                releaseApp.run();
+            }
+        };
+    }
+
+    /**
+     * @return A callback releasing the slot on whichever backend granted it, or null if the limit is reached.
+     */
+    private Runnable acquireSlot(String key, int max) {
+        if (max <= 0) {
+            return NO_SLOT;
+        }
+        if (isDistributed()) {
+            String leaseId = UUID.randomUUID().toString();
+            try {
+                Long result = stringRedisTemplate.execute(ACQUIRE_STREAM, List.of(key),
+                        String.valueOf(max), String.valueOf(TimeUnit.SECONDS.toMillis(streamLeaseSeconds)), leaseId);
+                if (result == null || result != 1L) {
+                    return null;
+                }
+                return () -> releaseRedisSlot(key, leaseId);
+            } catch (Exception e) {
+                log.warn("Redis stream limit check failed for {}, using local counter: {}", key, e.getMessage());
+            }
+        }
+        synchronized (streams) {
+            int[] count = streams.computeIfAbsent(key, k -> new int[1]);
+            if (count[0] >= max) {
+                return null;
+            }
+            count[0]++;
+        }
+        return () -> releaseLocalSlot(key);
+    }
+
+    // If Redis cannot be reached the lease is left to expire, it must not be taken off the local counter
+    private void releaseRedisSlot(String key, String leaseId) {
+        try {
+            stringRedisTemplate.execute(RELEASE_STREAM, List.of(key), leaseId);
+        } catch (Exception e) {
+            log.warn("Failed to release Redis stream slot {}, it expires with its lease: {}", key, e.getMessage());
+        }
+    }
+
+    private void releaseLocalSlot(String key) {
+        synchronized (streams) {
+            int[] count = streams.get(key);
+            if (count != null && --count[0] <= 0) {
+                streams.remove(key);
+            }
+        }
+    }
+
+    private boolean isDistributed() {
+        return "redis".equalsIgnoreCase(mode);
+    }
+
+    // Passes the decision through, counting it when it is a rejection
+    private boolean countRejected(boolean allowed, String scope, String limit) {
+        if (!allowed) {
+            meterRegistry.counter("chat.rate_limit.rejected", "scope", scope, "limit", limit).increment();
+        }
+        return allowed;
+    }
+
+    private static final class TokenBucket {
+        private final double permitsPerMilli;
+        private final int burst;
+        private double tokens;
+        private long updatedAt;
+
+        TokenBucket(double permitsPerSecond, int burst) {
+            this.permitsPerMilli = permitsPerSecond / 1000;
+            this.burst = burst;
+            this.tokens = burst;
+            this.updatedAt = System.currentTimeMillis();
+        }
+
+        synchronized boolean tryTake() {
+            long now = System.currentTimeMillis();
+            tokens = Math.min(burst, tokens + Math.max(0, now - updatedAt) * permitsPerMilli);
+            updatedAt = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+}
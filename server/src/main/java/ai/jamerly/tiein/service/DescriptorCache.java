@@ -0,0 +1,141 @@
+package ai.jamerly.tiein.service;
+
+import ai.jamerly.tiein.dto.PromptDto;
+import ai.jamerly.tiein.dto.ToolDto;
+import ai.jamerly.tiein.entity.MCPPrompt;
+import ai.jamerly.tiein.entity.MCPTool;
+import com.alibaba.fastjson2.JSONObject;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the parsed schemas and rendered descriptors of tools and prompts so that
+ * {@code tools/list}, {@code prompts/list} and every chat turn do not re-parse the same
+ * schema JSON again.
+ * <p>
+ * An entry is tied to the entity version it was rendered from: it is only reused while the
+ * source fields are unchanged, and the services drop it when a tool or prompt is updated or deleted.
+ * The returned nodes are shared and must not be modified by callers.
+ */
+@Component
+public class DescriptorCache {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Map<Long, ToolDescriptor> toolDescriptors = new ConcurrentHashMap<>();
+    private final Map<Long, PromptDescriptor> promptDescriptors = new ConcurrentHashMap<>();
+
+    /**
+     * @return The MCP {@code tools/list} entry of the tool.
+     */
+    public JsonNode getToolDescriptor(MCPTool tool) throws JsonProcessingException {
+        return getTool(tool).mcpDescriptor();
+    }
+
+    /**
+     * @return The {@code function} object of the tool for an OpenAI chat completion request.
+     */
+    public JSONObject getOpenAIFunction(MCPTool tool) throws JsonProcessingException {
+        return getTool(tool).openAIFunction();
+    }
+
+    /**
+     * @return The MCP {@code prompts/list} entry of the prompt, including its parsed schemas.
+     */
+    public JsonNode getPromptDescriptor(MCPPrompt prompt) throws JsonProcessingException {
+        return getPrompt(prompt).mcpDescriptor();
+    }
+
+    public void invalidateTool(Long toolId) {
+        toolDescriptors.remove(toolId);
+    }
+
+    public void invalidatePrompt(Long promptId) {
+        promptDescriptors.remove(promptId);
+    }
+
+    private ToolDescriptor getTool(MCPTool tool) throws JsonProcessingException {
+        ToolDescriptor cached = toolDescriptors.get(tool.getId());
+        if (cached != null && cached.isRenderedFrom(tool)) {
+            return cached;
+        }
+        ToolDescriptor rendered = renderTool(tool);
+        toolDescriptors.put(tool.getId(), rendered);
+        return rendered;
+    }
+
+    private PromptDescriptor getPrompt(MCPPrompt prompt) throws JsonProcessingException {
+        PromptDescriptor cached = promptDescriptors.get(prompt.getId());
+        if (cached != null && cached.isRenderedFrom(prompt)) {
+            return cached;
+        }
+        PromptDescriptor rendered = renderPrompt(prompt);
+        promptDescriptors.put(prompt.getId(), rendered);
+        return rendered;
+    }
+
+    private ToolDescriptor renderTool(MCPTool tool) throws JsonProcessingException {
+        ToolDto toolDto = new ToolDto();
+        toolDto.setName(tool.getName());
+        toolDto.setDescription(tool.getDescription());
+        JsonNode inputSchema = readSchema(tool.getInputSchemaJson());
+        toolDto.setInputSchema(inputSchema);
+        toolDto.setOutputSchema(readSchema(tool.getOutputSchemaJson()));
+
+        JSONObject functionObject = new JSONObject();
+        functionObject.put("name", "tool_" + tool.getId());
+        functionObject.put("description", tool.getName() + ":" + tool.getDescription());
+        if (inputSchema != null) {
+            functionObject.put("parameters", JSONObject.parseObject(tool.getInputSchemaJson()));
+        }
+
+        return new ToolDescriptor(tool.getName(), tool.getDescription(), tool.getInputSchemaJson(), tool.getOutputSchemaJson(),
+                objectMapper.valueToTree(toolDto), functionObject);
+    }
+
+    private PromptDescriptor renderPrompt(MCPPrompt prompt) throws JsonProcessingException {
+        PromptDto promptDto = new PromptDto();
+        promptDto.setName(prompt.getName());
+        promptDto.setDescription(prompt.getDescription());
+        promptDto.setContent(prompt.getContent());
+        promptDto.setInputSchema(readSchema(prompt.getInputSchemaJson()));
+        promptDto.setOutputSchema(readSchema(prompt.getOutputSchemaJson()));
+
+        return new PromptDescriptor(prompt.getName(), prompt.getDescription(), prompt.getContent(),
+                prompt.getInputSchemaJson(), prompt.getOutputSchemaJson(), objectMapper.valueToTree(promptDto));
+    }
+
+    private JsonNode readSchema(String schemaJson) throws JsonProcessingException {
+        if (schemaJson == null || schemaJson.isEmpty()) {
+            return null;
+        }
+        return objectMapper.readTree(schemaJson);
+    }
+
+    private record ToolDescriptor(String name, String description, String inputSchemaJson, String outputSchemaJson,
+                                  JsonNode mcpDescriptor, JSONObject openAIFunction) {
+        boolean isRenderedFrom(MCPTool tool) {
+            return Objects.equals(name, tool.getName())
+                    && Objects.equals(description, tool.getDescription())
+                    && Objects.equals(inputSchemaJson, tool.getInputSchemaJson())
+                    && Objects.equals(outputSchemaJson, tool.getOutputSchemaJson());
+        }
+    }
+
+    private record PromptDescriptor(String name, String description, String content, String inputSchemaJson,
+                                    String outputSchemaJson, JsonNode mcpDescriptor) {
+        boolean isRenderedFrom(MCPPrompt prompt) {
+            return Objects.equals(name, prompt.getName())
+                    && Objects.equals(description, prompt.getDescription())
+                    && Objects.equals(content, prompt.getContent())
+                    && Objects.equals(inputSchemaJson, prompt.getInputSchemaJson())
+                    && Objects.equals(outputSchemaJson, prompt.getOutputSchemaJson());
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package ai.jamerly.tiein.service;
+
+/**
+ * Computes the embedding vectors used by {@link ResourceChunkIndex}.
+ * Implementations must return L2-normalized vectors of {@link #dimension()} components.
+ */
+public interface EmbeddingProvider {
+
+    /**
+     * Identifies the model behind the vectors. A persisted index built by another provider is discarded.
+     */
+    String id();
+
+    int dimension();
+
+    float[] embed(String text);
+}
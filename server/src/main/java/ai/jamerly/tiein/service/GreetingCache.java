@@ -0,0 +1,142 @@
+package ai.jamerly.tiein.service;
+
+import ai.jamerly.tiein.dto.InitResult;
+import ai.jamerly.tiein.entity.MCPChatBase;
+import com.alibaba.fastjson2.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.internal.StringUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generated welcome greetings, cached in Redis by chat base, language and a fingerprint of the
+ * visitor profile (and of the configured greeting, so editing it takes effect immediately).
+ * <p>
+ * A lookup never waits for the model: on a miss it starts generating the greeting in the background
+ * and returns {@code null}. Entries older than {@code chat.greeting.refresh-after-minutes} are still
+ * served but regenerated in the background, so popular keys do not expire under traffic.
+ */
+@Slf4j
+@Component
+public class GreetingCache {
+
+    private static final String KEY_PREFIX = "chat_greeting:";
+
+    @Autowired
+    private RedisService redisService;
+
+    @Autowired
+    private OpenAIRequestAssembler openAIRequestAssembler;
+
+    @Value("${chat.greeting.ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    @Value("${chat.greeting.refresh-after-minutes:720}")
+    private long refreshAfterMinutes;
+
+    // Keys being generated on this node, so a burst of /init calls triggers one completion
+    private final Set<String> generating = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @return The cached greeting, or {@code null} on a miss (generation has then been started).
+     */
+    public InitResult get(MCPChatBase chatBase, String baseGreeting, String language, String userProfileJson) {
+        String key = KEY_PREFIX + chatBase.getId() + ":" + language + ":" + fingerprint(baseGreeting, userProfileJson);
+        JSONObject cached = null;
+        try {
+            String value = redisService.get(key);
+            if (value != null) {
+                cached = JSONObject.parseObject(value);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read cached greeting {}: {}", key, e.getMessage());
+        }
+
+        if (cached == null) {
+            generate(key, baseGreeting, language, userProfileJson);
+            return null;
+        }
+        long age = System.currentTimeMillis() - cached.getLongValue("generatedAt");
+        if (age > TimeUnit.MINUTES.toMillis(refreshAfterMinutes)) {
+            generate(key, baseGreeting, language, userProfileJson); // Refresh ahead of expiry
+        }
+        InitResult initResult = new InitResult();
+        initResult.setSuccess(Boolean.TRUE);
+        initResult.setUserId(cached.getString("userId"));
+        initResult.setMessage(cached.getString("greeting"));
+        return initResult;
+    }
+
+    private void generate(String key, String baseGreeting, String language, String userProfileJson) {
+        if (!generating.add(key)) {
+            return;
+        }
+        String prompt = String.format("Given the user profile %s.\n " +
+                "Write a friendly welcoming greeting in %s for \"%s\" and provide the result in JSON format. " +
+                "```{\"greeting\" : \"generated greeting\"  }```", userProfileJson, language, baseGreeting);
+        AIRequest aiRequest = new AIRequest();
+        aiRequest.setPrompt(prompt);
+        aiRequest.setModel("gpt-3.5-turbo"); // Or another appropriate model
+        aiRequest.setStream(Boolean.FALSE); // Not streaming for a single welcome message
+
+        try {
+            openAIRequestAssembler.invoke(aiRequest)
+                    .filter(chunk -> !StringUtil.isBlank(chunk) && !"[DONE]".equals(chunk.trim()))
+                    .map(chunk -> JSONObject.parseObject(chunk.trim()).getString("chunk"))
+                    .reduce(new StringBuilder(), StringBuilder::append)
+                    .publishOn(Schedulers.boundedElastic())
+                    .doFinally(signal -> generating.remove(key))
+                    .subscribe(response -> {
+                        JSONObject greeting = parseGreeting(response.toString());
+                        if (greeting == null || StringUtil.isBlank(greeting.getString("greeting"))) {
+                            log.warn("Ignoring greeting response without a greeting for {}", key);
+                            return;
+                        }
+                        JSONObject entry = new JSONObject();
+                        entry.put("greeting", greeting.getString("greeting"));
+                        entry.put("userId", greeting.getString("userId"));
+                        entry.put("generatedAt", System.currentTimeMillis());
+                        redisService.set(key, entry.toJSONString(), ttlMinutes, TimeUnit.MINUTES);
+                    }, e -> log.error("Failed to generate greeting for {}: {}", key, e.getMessage()));
+        } catch (Exception e) {
+            generating.remove(key);
+            log.error("Failed to start greeting generation for {}: {}", key, e.getMessage());
+        }
+    }
+
+    // The model sometimes wraps the JSON in a code fence, only the outermost object is parsed
+    private static JSONObject parseGreeting(String response) {
+        int start = response.indexOf('{');
+        int end = response.lastIndexOf('}');
+        if (start < 0 || end <= start) {
+            return null;
+        }
+        try {
+            return JSONObject.parseObject(response.substring(start, end + 1));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String fingerprint(String baseGreeting, String userProfileJson) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(baseGreeting.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(userProfileJson).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest(), 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ai.jamerly.tiein.service;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.Script;
+import groovy.transform.ThreadInterrupt;
+import lombok.extern.slf4j.Slf4j;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the compiled {@link Script} class of every worker so a tool call only
+ * has to instantiate it instead of recompiling the source each time.
+ * <p>
+ * Entries are keyed by worker id and carry the hash of the script they were
+ * compiled from; a hash mismatch recompiles and replaces the entry. Every entry
+ * owns its own {@link GroovyClassLoader}, so dropping an entry lets the old
+ * classes be unloaded.
+ */
+@Slf4j
+@Component
+public class GroovyScriptCache {
+
+    private final Map<Long, CompiledScript> compiledScripts = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a fresh script instance bound to the given variables.
+     *
+     * @param workerId The worker the script belongs to.
+     * @param script The current script source of the worker.
+     * @param binding The binding for this invocation only.
+     * @return A new script instance ready to run.
+     */
+    public Script createScript(Long workerId, String script, Binding binding) {
+        String hash = hash(script);
+        CompiledScript compiled = compiledScripts.compute(workerId, (id, existing) -> {
+            if (existing != null && existing.hash().equals(hash)) {
+                return existing;
+            }
+            if (existing != null) {
+                existing.close();
+            }
+            log.info("Compiling groovy script for worker {}", id);
+            return compile(hash, script);
+        });
+        return InvokerHelper.createScript(compiled.scriptClass(), binding);
+    }
+
+    /**
+     * Drops the compiled script of a worker, e.g. after it was updated or deleted.
+     *
+     * @param workerId The worker whose script should be evicted.
+     */
+    public void invalidate(Long workerId) {
+        if (workerId == null) {
+            return;
+        }
+        CompiledScript removed = compiledScripts.remove(workerId);
+        if (removed != null) {
+            removed.close();
+        }
+    }
+
+    private CompiledScript compile(String hash, String script) {
+        // Scripts check the interrupt flag in loops and method bodies, so a timed-out tool call can be stopped
+        CompilerConfiguration configuration = new CompilerConfiguration();
+        configuration.addCompilationCustomizers(new ASTTransformationCustomizer(ThreadInterrupt.class));
+        GroovyClassLoader classLoader = new GroovyClassLoader(getClass().getClassLoader(), configuration);
+        Class<?> scriptClass = classLoader.parseClass(script);
+        return new CompiledScript(hash, scriptClass, classLoader);
+    }
+
+    private String hash(String script) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(script.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private record CompiledScript(String hash, Class<?> scriptClass, GroovyClassLoader classLoader) {
+        void close() {
+            classLoader.clearCache();
+            try {
+                classLoader.close();
+            } catch (IOException e) {
+                log.warn("Failed to close groovy class loader: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package ai.jamerly.tiein.service;
+
+import ai.jamerly.tiein.entity.MCPResource;
+import ai.jamerly.tiein.entity.MCPTool;
+import ai.jamerly.tiein.repository.MCPResourceRepository;
+import ai.jamerly.tiein.repository.MCPToolRepository;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches, per group, the OpenAI {@code tools} array and the resource preamble appended to the
+ * system prompt, so a chat turn does not query and re-render the group's catalog.
+ * <p>
+ * Entries are tagged with the catalog version they were built from. Any tool or resource mutation
+ * bumps the version once its transaction commits, which makes every entry stale at once; group
+ * membership can change with any mutation, so there is no finer-grained invalidation. The bump is
+ * published on {@link #INVALIDATION_CHANNEL} so the other nodes bump theirs, and entries older than
+ * {@code catalog.cache.max-age-seconds} are rebuilt in case a message was missed.
+ * The returned array is shared and must not be modified by callers.
+ */
+@Slf4j
+@Component
+public class GroupContextCache {
+
+    @Autowired
+    private MCPToolRepository mcpToolRepository;
+
+    @Autowired
+    private MCPResourceRepository mcpResourceRepository;
+
+    public static final String INVALIDATION_CHANNEL = "tiein:group-context:invalidate";
+
+    @Autowired
+    private DescriptorCache descriptorCache;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${catalog.cache.max-age-seconds:300}")
+    private long maxAgeSeconds;
+
+    private final AtomicLong catalogVersion = new AtomicLong();
+    private final Map<Long, GroupContext> contexts = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> catalogVersion.incrementAndGet(),
+                new ChannelTopic(INVALIDATION_CHANNEL));
+    }
+
+    /**
+     * @return The OpenAI {@code tools} array of the group, or {@code null} if the group has no tools.
+     */
+    public JSONArray getTools(Long groupId) throws JsonProcessingException {
+        return get(groupId).tools();
+    }
+
+    /**
+     * @return The resource block to append to the system prompt, or {@code null} if the group has no resources.
+     */
+    public String getResourcePreamble(Long groupId) throws JsonProcessingException {
+        return get(groupId).resourcePreamble();
+    }
+
+    /**
+     * Marks every cached group context stale on this node and on every other node, after the current
+     * transaction commits.
+     */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidateAndPublish();
+                }
+            });
+        } else {
+            invalidateAndPublish();
+        }
+    }
+
+    private void invalidateAndPublish() {
+        catalogVersion.incrementAndGet();
+        try {
+            stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, "invalidate");
+        } catch (Exception e) {
+            log.error("Failed to publish group context invalidation: {}", e.getMessage());
+        }
+    }
+
+    private GroupContext get(Long groupId) throws JsonProcessingException {
+        long version = catalogVersion.get();
+        GroupContext cached = contexts.get(groupId);
+        if (cached != null && cached.version() == version
+                && System.currentTimeMillis() - cached.builtAt() <= TimeUnit.SECONDS.toMillis(maxAgeSeconds)) {
+            return cached;
+        }
+        GroupContext built = build(groupId, version);
+        contexts.put(groupId, built);
+        return built;
+    }
+
+    private GroupContext build(Long groupId, long version) throws JsonProcessingException {
+        JSONArray toolsArray = null;
+        List<MCPTool> tools = mcpToolRepository.findByGroupId(groupId);
+        if (!tools.isEmpty()) {
+            toolsArray = new JSONArray();
+            for (MCPTool tool : tools) {
+                JSONObject toolObject = new JSONObject();
+                toolObject.put("type", "function");
+                toolObject.put("function", descriptorCache.getOpenAIFunction(tool));
+                toolsArray.add(toolObject);
+            }
+        }
+
+        String resourcePreamble = null;
+        List<MCPResource> resources = mcpResourceRepository.findByGroupId(groupId, Pageable.unpaged()).getContent();
+        if (!resources.isEmpty()) {
+            StringBuilder resourceContent = new StringBuilder();
+            resourceContent.append("\n\nAvailable Resources:\n");
+            for (MCPResource resource : resources) {
+                resourceContent.append("--- Resource Uri: ").append(resource.getUri()).append(" ---\n");
+                resourceContent.append(resource.getContent()).append("\n");
+            }
+            resourcePreamble = resourceContent.toString();
+        }
+
+        return new GroupContext(version, System.currentTimeMillis(), toolsArray, resourcePreamble);
+    }
+
+    private record GroupContext(long version, long builtAt, JSONArray tools, String resourcePreamble) {
+    }
+}
@@ -0,0 +1,189 @@
+package ai.jamerly.tiein.service;
+
+import ai.jamerly.tiein.entity.GroupMembership;
+import ai.jamerly.tiein.entity.MCPChatBaseGroupMember;
+import ai.jamerly.tiein.entity.MCPPromptGroupMember;
+import ai.jamerly.tiein.entity.MCPResourceGroupMember;
+import ai.jamerly.tiein.entity.MCPToolGroupMember;
+import ai.jamerly.tiein.repository.GroupMembershipRepository;
+import ai.jamerly.tiein.repository.MCPChatBaseGroupMemberRepository;
+import ai.jamerly.tiein.repository.MCPPromptGroupMemberRepository;
+import ai.jamerly.tiein.repository.MCPResourceGroupMemberRepository;
+import ai.jamerly.tiein.repository.MCPToolGroupMemberRepository;
+import com.alibaba.fastjson2.JSONArray;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Maintains the group membership join tables of tools, resources, prompts and chat bases.
+ * The {@code groupIdsJson} column stays the representation returned by the API; the join
+ * tables are what group-filtered queries run against.
+ */
+@Slf4j
+@Service
+public class GroupMembershipService {
+
+    @Autowired
+    private MCPToolGroupMemberRepository toolGroupMemberRepository;
+
+    @Autowired
+    private MCPResourceGroupMemberRepository resourceGroupMemberRepository;
+
+    @Autowired
+    private MCPPromptGroupMemberRepository promptGroupMemberRepository;
+
+    @Autowired
+    private MCPChatBaseGroupMemberRepository chatBaseGroupMemberRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private static final String BACKFILL_MARKER = "migration.group-memberships.v1";
+    private static final String BACKFILL_LOCK = "tiein:group-membership-backfill";
+    private static final int BACKFILL_LOCK_TIMEOUT_SECONDS = 300;
+
+    @Transactional
+    public void replaceToolGroups(Long toolId, List<Long> groupIds) {
+        replace(toolGroupMemberRepository, MCPToolGroupMember::new, toolId, groupIds);
+    }
+
+    @Transactional
+    public void replaceResourceGroups(Long resourceId, List<Long> groupIds) {
+        replace(resourceGroupMemberRepository, MCPResourceGroupMember::new, resourceId, groupIds);
+    }
+
+    @Transactional
+    public void replacePromptGroups(Long promptId, List<Long> groupIds) {
+        replace(promptGroupMemberRepository, MCPPromptGroupMember::new, promptId, groupIds);
+    }
+
+    @Transactional
+    public void replaceChatBaseGroups(Long chatBaseId, List<Long> groupIds) {
+        replace(chatBaseGroupMemberRepository, MCPChatBaseGroupMember::new, chatBaseId, groupIds);
+    }
+
+    /**
+     * Backfills the join tables from the legacy {@code groupIdsJson} columns, once per database.
+     * <p>
+     * Runs while the context starts, before the web server accepts requests, so group-filtered queries
+     * never see half-filled join tables. The repositories this service depends on have already let
+     * Hibernate update the schema. The backfill runs under a MySQL named lock so that nodes starting
+     * together do not race; a node that cannot get the lock fails to start rather than serve without
+     * memberships. {@link #BACKFILL_MARKER} is recorded in the {@code schema_migrations} table, not in
+     * the user-visible {@code system_settings}. Each entity is reconciled on its own: memberships
+     * missing from the join table are inserted and existing ones are kept, so rows written by a node
+     * that is already serving requests neither block nor conflict with it. Only the id and
+     * {@code group_ids_json} columns are read.
+     */
+    @PostConstruct
+    public void backfillFromJson() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS schema_migrations ("
+                + "migration_key VARCHAR(191) NOT NULL PRIMARY KEY, applied_at DATETIME NOT NULL)");
+        if (isBackfilled()) {
+            return;
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            // GET_LOCK is held by the connection, so it is taken and released on this one
+            try (PreparedStatement lock = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+                lock.setString(1, BACKFILL_LOCK);
+                lock.setInt(2, BACKFILL_LOCK_TIMEOUT_SECONDS);
+                try (ResultSet rs = lock.executeQuery()) {
+                    if (!rs.next() || rs.getInt(1) != 1) {
+                        throw new IllegalStateException("Group membership backfill is still running on another node after "
+                                + BACKFILL_LOCK_TIMEOUT_SECONDS + "s, restart this node once it has finished");
+                    }
+                }
+            }
+            try {
+                if (!isBackfilled()) {
+                    // Databases backfilled by an earlier version recorded the marker as a system setting
+                    boolean recordedAsSetting = jdbcTemplate.queryForObject(
+                            "SELECT COUNT(*) FROM system_settings WHERE setting_key = ?", Integer.class, BACKFILL_MARKER) > 0;
+                    if (!recordedAsSetting) {
+                        reconcile("mcp_tools", "mcp_tool_group_members");
+                        reconcile("mcp_resources", "mcp_resource_group_members");
+                        reconcile("mcp_prompts", "mcp_prompt_group_members");
+                        reconcile("mcp_chatbase", "mcp_chatbase_group_members");
+                    }
+                    jdbcTemplate.update("INSERT INTO schema_migrations (migration_key, applied_at) VALUES (?, NOW())",
+                            BACKFILL_MARKER);
+                    jdbcTemplate.update("DELETE FROM system_settings WHERE setting_key = ?", BACKFILL_MARKER);
+                }
+            } finally {
+                try (PreparedStatement unlock = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+                    unlock.setString(1, BACKFILL_LOCK);
+                    unlock.execute();
+                }
+            }
+            return null;
+        });
+    }
+
+    private boolean isBackfilled() {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM schema_migrations WHERE migration_key = ?",
+                Integer.class, BACKFILL_MARKER);
+        return count != null && count > 0;
+    }
+
+    private void reconcile(String entityTable, String membershipTable) {
+        List<Object[]> memberships = new ArrayList<>();
+        jdbcTemplate.query("SELECT id, group_ids_json FROM " + entityTable + " WHERE group_ids_json IS NOT NULL", rs -> {
+            long memberId = rs.getLong(1);
+            List<Long> groupIds;
+            try {
+                groupIds = JSONArray.parseArray(rs.getString(2), Long.class);
+            } catch (Exception e) {
+                log.warn("Skipping unreadable group_ids_json of {} {}", entityTable, memberId);
+                return;
+            }
+            for (Long groupId : new LinkedHashSet<>(groupIds == null ? List.<Long>of() : groupIds)) {
+                if (groupId != null) {
+                    memberships.add(new Object[]{groupId, memberId});
+                }
+            }
+        });
+        if (memberships.isEmpty()) {
+            return;
+        }
+        int[] inserted = jdbcTemplate.batchUpdate(
+                "INSERT IGNORE INTO " + membershipTable + " (group_id, member_id) VALUES (?, ?)", memberships);
+        long added = Arrays.stream(inserted).filter(rows -> rows > 0).count();
+        log.info("Reconciled {} group memberships from {}.group_ids_json, {} were missing", memberships.size(), entityTable, added);
+    }
+
+    private <T extends GroupMembership> void replace(GroupMembershipRepository<T> repository, Supplier<T> factory,
+                                                     Long memberId, List<Long> groupIds) {
+        repository.deleteByMemberId(memberId);
+        repository.saveAll(build(factory, memberId, groupIds));
+    }
+
+    private <T extends GroupMembership> List<T> build(Supplier<T> factory, Long memberId, List<Long> groupIds) {
+        List<T> memberships = new ArrayList<>();
+        if (groupIds == null) {
+            return memberships;
+        }
+        for (Long groupId : new LinkedHashSet<>(groupIds)) {
+            if (groupId == null) {
+                continue;
+            }
+            T membership = factory.get();
+            membership.setGroupId(groupId);
+            membership.setMemberId(memberId);
+            memberships.add(membership);
+        }
+        return memberships;
+    }
+}
@@ -0,0 +1,99 @@
+package ai.jamerly.tiein.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Local embedding provider based on feature hashing: words, word bigrams and, for Han text, character
+ * unigrams and bigrams are hashed into a fixed number of signed buckets. It needs no model or network
+ * access, so retrieval works offline; it matches on shared vocabulary rather than meaning.
+ */
+@Component
+@ConditionalOnProperty(name = "resource.retrieval.embedding-provider", havingValue = "hashing", matchIfMissing = true)
+public class HashingEmbeddingProvider implements EmbeddingProvider {
+
+    @Value("${resource.retrieval.hashing-dimension:512}")
+    private int dimension;
+
+    @Override
+    public String id() {
+        return "hashing-" + dimension;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[dimension];
+        if (text == null) {
+            return vector;
+        }
+        List<String> words = new ArrayList<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        for (int i = 0; i < words.size(); i++) {
+            String word = words.get(i);
+            if (containsHan(word)) {
+                // Han text is not space separated, index its characters and character pairs instead
+                for (int j = 0; j < word.length(); j++) {
+                    add(vector, word.substring(j, j + 1));
+                    if (j + 1 < word.length()) {
+                        add(vector, word.substring(j, j + 2));
+                    }
+                }
+            } else {
+                add(vector, word);
+                if (i + 1 < words.size()) {
+                    add(vector, word + " " + words.get(i + 1));
+                }
+            }
+        }
+        normalize(vector);
+        return vector;
+    }
+
+    private void add(float[] vector, String feature) {
+        int hash = mix(feature.hashCode());
+        int bucket = Math.floorMod(hash, dimension);
+        vector[bucket] += (hash & 0x40000000) == 0 ? 1f : -1f;
+    }
+
+    private static int mix(int h) {
+        // Murmur3 finalizer, spreads String.hashCode() over all bits
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static boolean containsHan(String word) {
+        return word.codePoints().anyMatch(c -> Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN);
+    }
+
+    private static void normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0) {
+            return;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+    }
+}
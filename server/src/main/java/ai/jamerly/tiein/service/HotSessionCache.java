@@ -0,0 +1,134 @@
+package ai.jamerly.tiein.service;
+
+import ai.jamerly.tiein.entity.ChatHistory;
+import com.alibaba.fastjson2.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded ring of the most recent turns of active chat sessions, kept in Redis so the next message
+ * of a session does not have to re-read its history from MySQL.
+ * <p>
+ * A ring holds at most {@code chat.history.hot-session-turns} turns. A ring shorter than that holds
+ * the whole session; a full ring holds only its newest turns. Turns are appended only to rings that
+ * already exist, so a ring is always seeded first (from MySQL plus the turns still queued in
+ * {@link ChatHistoryWriter}) and never misses older turns.
+ * Redis failures are treated as cache misses.
+ */
+@Slf4j
+@Component
+public class HotSessionCache {
+
+    private static final String KEY_PREFIX = "chat_session_turns:";
+
+    @Autowired
+    private RedisService redisService;
+
+    @Value("${chat.history.hot-session-turns:50}")
+    private int maxTurns;
+
+    @Value("${chat.history.hot-session-ttl-minutes:30}")
+    private long ttlMinutes;
+
+    public boolean isEnabled() {
+        return maxTurns > 0;
+    }
+
+    public int getMaxTurns() {
+        return maxTurns;
+    }
+
+    /**
+     * @return The cached turns of the session, oldest first, or {@code null} on a miss.
+     */
+    public List<ChatHistory> getRecentTurns(UUID sessionId) {
+        if (!isEnabled()) {
+            return null;
+        }
+        try {
+            List<String> entries = redisService.listRange(KEY_PREFIX + sessionId);
+            if (entries.isEmpty()) {
+                return null;
+            }
+            List<ChatHistory> turns = new ArrayList<>(entries.size());
+            for (String entry : entries) {
+                turns.add(fromEntry(sessionId, entry));
+            }
+            return turns;
+        } catch (Exception e) {
+            log.warn("Failed to read hot session {} from Redis: {}", sessionId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Seeds the ring of a session with its newest turns loaded from MySQL, oldest first.
+     */
+    public void seed(UUID sessionId, List<ChatHistory> turns) {
+        if (!isEnabled() || turns.isEmpty()) {
+            return;
+        }
+        List<String> entries = new ArrayList<>(turns.size());
+        for (ChatHistory turn : turns.subList(Math.max(0, turns.size() - maxTurns), turns.size())) {
+            entries.add(toEntry(turn));
+        }
+        try {
+            redisService.listReplace(KEY_PREFIX + sessionId, entries, ttlMinutes, TimeUnit.MINUTES);
+        } catch (Exception e) {
+            log.warn("Failed to seed hot session {} in Redis: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * Drops the ring of a session, the next read seeds it again.
+     */
+    public void evict(UUID sessionId) {
+        try {
+            redisService.delete(KEY_PREFIX + sessionId);
+        } catch (Exception e) {
+            log.warn("Failed to evict hot session {} from Redis: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * Appends a completed turn to the ring of its session, if the session is cached.
+     */
+    public void append(ChatHistory turn) {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            redisService.listAppendIfPresent(KEY_PREFIX + turn.getChatSessionId(), toEntry(turn),
+                    maxTurns, ttlMinutes, TimeUnit.MINUTES);
+        } catch (Exception e) {
+            log.warn("Failed to append to hot session {} in Redis: {}", turn.getChatSessionId(), e.getMessage());
+        }
+    }
+
+    private static String toEntry(ChatHistory turn) {
+        JSONObject entry = new JSONObject();
+        entry.put("u", turn.getUserMessage());
+        entry.put("a", turn.getAiResponse());
+        entry.put("t", turn.getTimestamp() == null ? null : turn.getTimestamp().getTime());
+        return entry.toJSONString();
+    }
+
+    private static ChatHistory fromEntry(UUID sessionId, String value) {
+        JSONObject entry = JSONObject.parseObject(value);
+        ChatHistory turn = new ChatHistory();
+        turn.setChatSessionId(sessionId);
+        turn.setUserMessage(entry.getString("u"));
+        turn.setAiResponse(entry.getString("a"));
+        Long timestamp = entry.getLong("t");
+        turn.setTimestamp(timestamp == null ? null : new Date(timestamp));
+        return turn;
+    }
+}
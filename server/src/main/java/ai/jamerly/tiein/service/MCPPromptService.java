@@ -2,19 +2,16 @@ package ai.jamerly.tiein.service;
 
 import ai.jamerly.tiein.entity.MCPPrompt;
 import ai.jamerly.tiein.repository.MCPPromptRepository;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,33 +21,32 @@ public class MCPPromptService {
     private MCPPromptRepository mcpPromptRepository;
 
     @Autowired
-    private ObjectMapper objectMapper;
+    private GroupMembershipService groupMembershipService;
+
+    @Autowired
+    private DescriptorCache descriptorCache;
+
+    @Autowired
+    private CatalogCacheSync catalogCacheSync;
+
+    private final CatalogCache<MCPPrompt> promptCatalog =
+            new CatalogCache<>("prompts", () -> mcpPromptRepository.findAll(), MCPPrompt::new, MCPPrompt::getId, MCPPrompt::getGroupIds);
+
+    @PostConstruct
+    public void registerCatalog() {
+        catalogCacheSync.register(promptCatalog);
+    }
 
     public Page<MCPPrompt> getAllPrompts(Pageable pageable, List<Long> groupIds) {
-        List<MCPPrompt> allPrompts = mcpPromptRepository.findAll(); // Fetch all prompts
-        List<MCPPrompt> filteredPrompts = new ArrayList<>();
-
-        if (groupIds != null && !groupIds.isEmpty()) {
-            Set<Long> filterGroupIdsSet = new HashSet<>(groupIds);
-            for (MCPPrompt prompt : allPrompts) {
-                if (prompt.getGroupIds() != null) {
-                    // Check if any of the prompt's groupIds are in the filterGroupIdsSet
-                    boolean matches = prompt.getGroupIds().stream().anyMatch(filterGroupIdsSet::contains);
-                    if (matches) {
-                        filteredPrompts.add(prompt);
-                    }
-                }
-            }
-        } else {
-            filteredPrompts.addAll(allPrompts);
-        }
-
-        // Apply pagination manually after filtering
-        int start = (int) pageable.getOffset();
-        int end = Math.min((start + pageable.getPageSize()), filteredPrompts.size());
-        List<MCPPrompt> pageContent = filteredPrompts.subList(start, end);
-
-        return new PageImpl<>(pageContent, pageable, filteredPrompts.size());
+        // Served from the in-memory catalog snapshot instead of a full table scan
+        return promptCatalog.page(pageable, groupIds);
+    }
+
+    /**
+     * Keyset page of prompts ordered by id, starting after {@code afterId} (exclusive).
+     */
+    public List<MCPPrompt> getPromptsAfter(Long afterId, int limit) {
+        return mcpPromptRepository.findByIdGreaterThanOrderByIdAsc(afterId == null ? 0L : afterId, Limit.of(limit));
     }
 
     public Optional<MCPPrompt> getPromptByName(String name) {
@@ -61,11 +57,16 @@ public class MCPPromptService {
         return mcpPromptRepository.findById(id);
     }
 
+    @Transactional
     public MCPPrompt createPrompt(MCPPrompt prompt) {
         // groupIdsJson will be set by the entity's setGroupIds method
-        return mcpPromptRepository.save(prompt);
+        MCPPrompt savedPrompt = mcpPromptRepository.save(prompt);
+        groupMembershipService.replacePromptGroups(savedPrompt.getId(), savedPrompt.getGroupIds());
+        catalogCacheSync.upsert(promptCatalog, savedPrompt);
+        return savedPrompt;
     }
 
+    @Transactional
     public MCPPrompt updatePrompt(Long id, MCPPrompt updatedPrompt) {
         return mcpPromptRepository.findById(id)
                 .map(prompt -> {
@@ -75,12 +76,20 @@ public class MCPPromptService {
                     prompt.setInputSchemaJson(updatedPrompt.getInputSchemaJson());
                     prompt.setOutputSchemaJson(updatedPrompt.getOutputSchemaJson());
                     prompt.setGroupIds(updatedPrompt.getGroupIds()); // Update groupIds
-                    return mcpPromptRepository.save(prompt);
+                    MCPPrompt savedPrompt = mcpPromptRepository.save(prompt);
+                    groupMembershipService.replacePromptGroups(savedPrompt.getId(), savedPrompt.getGroupIds());
+                    catalogCacheSync.upsert(promptCatalog, savedPrompt);
+                    descriptorCache.invalidatePrompt(savedPrompt.getId());
+                    return savedPrompt;
                 }).orElse(null);
     }
 
+    @Transactional
     public void deletePrompt(Long id) {
         mcpPromptRepository.deleteById(id);
+        groupMembershipService.replacePromptGroups(id, List.of());
+        catalogCacheSync.remove(promptCatalog, id);
+        descriptorCache.invalidatePrompt(id);
     }
 
     public long countPrompts() {
@@ -88,12 +97,6 @@ public class MCPPromptService {
     }
 
     public List<MCPPrompt> getPromptsByGroupId(Long groupId) {
-        try {
-            String groupIdJson = objectMapper.writeValueAsString(groupId);
-            return mcpPromptRepository.findByGroupIdsJsonContaining(groupIdJson, Pageable.unpaged()).getContent();
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-            return List.of();
-        }
+        return mcpPromptRepository.findByGroupId(groupId, Pageable.unpaged()).getContent();
     }
 }
@@ -2,19 +2,16 @@ package ai.jamerly.tiein.service;
 
 import ai.jamerly.tiein.entity.MCPResource;
 import ai.jamerly.tiein.repository.MCPResourceRepository;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,33 +21,36 @@ public class MCPResourceService {
     private MCPResourceRepository mcpResourceRepository;
 
     @Autowired
-    private ObjectMapper objectMapper;
+    private GroupMembershipService groupMembershipService;
 
-    public Page<MCPResource> getAllResources(Pageable pageable, List<Long> groupIds) {
-        List<MCPResource> allResources = mcpResourceRepository.findAll(); // Fetch all resources
-        List<MCPResource> filteredResources = new ArrayList<>();
-
-        if (groupIds != null && !groupIds.isEmpty()) {
-            Set<Long> filterGroupIdsSet = new HashSet<>(groupIds);
-            for (MCPResource resource : allResources) {
-                if (resource.getGroupIds() != null) {
-                    // Check if any of the resource's groupIds are in the filterGroupIdsSet
-                    boolean matches = resource.getGroupIds().stream().anyMatch(filterGroupIdsSet::contains);
-                    if (matches) {
-                        filteredResources.add(resource);
-                    }
-                }
-            }
-        } else {
-            filteredResources.addAll(allResources);
-        }
+    @Autowired
+    private GroupContextCache groupContextCache;
+
+    // Null unless resource.retrieval.enabled is true
+    @Autowired(required = false)
+    private ResourceChunkIndex resourceChunkIndex;
+
+    @Autowired
+    private CatalogCacheSync catalogCacheSync;
+
+    private final CatalogCache<MCPResource> resourceCatalog =
+            new CatalogCache<>("resources", () -> mcpResourceRepository.findAll(), MCPResource::new, MCPResource::getId, MCPResource::getGroupIds);
 
-        // Apply pagination manually after filtering
-        int start = (int) pageable.getOffset();
-        int end = Math.min((start + pageable.getPageSize()), filteredResources.size());
-        List<MCPResource> pageContent = filteredResources.subList(start, end);
+    @PostConstruct
+    public void registerCatalog() {
+        catalogCacheSync.register(resourceCatalog);
+    }
+
+    public Page<MCPResource> getAllResources(Pageable pageable, List<Long> groupIds) {
+        // Served from the in-memory catalog snapshot instead of a full table scan
+        return resourceCatalog.page(pageable, groupIds);
+    }
 
-        return new PageImpl<>(pageContent, pageable, filteredResources.size());
+    /**
+     * Keyset page of resources ordered by id, starting after {@code afterId} (exclusive).
+     */
+    public List<MCPResource> getResourcesAfter(Long afterId, int limit) {
+        return mcpResourceRepository.findByIdGreaterThanOrderByIdAsc(afterId == null ? 0L : afterId, Limit.of(limit));
     }
 
     public Optional<MCPResource> getResourceByUri(String uri) {
@@ -62,11 +62,20 @@ public class MCPResourceService {
     }
 
 
+    @Transactional
     public MCPResource createResource(MCPResource resource) {
         // groupIdsJson will be set by the entity's setGroupIds method
-        return mcpResourceRepository.save(resource);
+        MCPResource savedResource = mcpResourceRepository.save(resource);
+        groupMembershipService.replaceResourceGroups(savedResource.getId(), savedResource.getGroupIds());
+        catalogCacheSync.upsert(resourceCatalog, savedResource);
+        if (resourceChunkIndex != null) {
+            resourceChunkIndex.index(savedResource);
+        }
+        groupContextCache.invalidate();
+        return savedResource;
     }
 
+    @Transactional
     public MCPResource updateResource(Long id, MCPResource updatedResource) {
         return mcpResourceRepository.findById(id)
                 .map(resource -> {
@@ -75,12 +84,26 @@ public class MCPResourceService {
                     resource.setContentType(updatedResource.getContentType());
                     resource.setDescription(updatedResource.getDescription());
                     resource.setGroupIds(updatedResource.getGroupIds()); // Update groupIds
-                    return mcpResourceRepository.save(resource);
+                    MCPResource savedResource = mcpResourceRepository.save(resource);
+                    groupMembershipService.replaceResourceGroups(savedResource.getId(), savedResource.getGroupIds());
+                    catalogCacheSync.upsert(resourceCatalog, savedResource);
+                    if (resourceChunkIndex != null) {
+                        resourceChunkIndex.index(savedResource);
+                    }
+                    groupContextCache.invalidate();
+                    return savedResource;
                 }).orElse(null);
     }
 
+    @Transactional
     public void deleteResource(Long id) {
         mcpResourceRepository.deleteById(id);
+        groupMembershipService.replaceResourceGroups(id, List.of());
+        catalogCacheSync.remove(resourceCatalog, id);
+        if (resourceChunkIndex != null) {
+            resourceChunkIndex.remove(id);
+        }
+        groupContextCache.invalidate();
     }
 
     public long countResources() {
@@ -88,12 +111,6 @@ public class MCPResourceService {
     }
 
     public List<MCPResource> getResourcesByGroupId(Long groupId) {
-        try {
-            String groupIdJson = objectMapper.writeValueAsString(groupId);
-            return mcpResourceRepository.findByGroupIdsJsonContaining(groupIdJson, Pageable.unpaged()).getContent();
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-            return List.of();
-        }
+        return mcpResourceRepository.findByGroupId(groupId, Pageable.unpaged()).getContent();
     }
 }
@@ -8,31 +8,32 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import groovy.lang.Binding;
-import groovy.lang.GroovyShell;
-import org.apache.hc.client5.http.classic.methods.*;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
-import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.concurrent.FutureCallback;
 import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.io.support.ClassicRequestBuilder;
 import ai.jamerly.tiein.entity.Group; // Import Group
 import ai.jamerly.tiein.repository.GroupRepository; // Import GroupRepository
 import ai.jamerly.tiein.service.WorkerService; // Import WorkerService
 import ai.jamerly.tiein.service.MCPResourceService; // Import MCPResourceService
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import lombok.extern.slf4j.Slf4j;
@@ -53,34 +54,44 @@ public class MCPToolService {
     @Autowired
     private MCPResourceService mcpResourceService; // Inject MCPResourceService
 
+    @Autowired
+    private GroovyScriptCache groovyScriptCache;
+
+    @Autowired
+    private GroupMembershipService groupMembershipService;
+
+    @Autowired
+    private GroupContextCache groupContextCache;
+
+    @Autowired
+    private DescriptorCache descriptorCache;
+
+    @Autowired
+    private CloseableHttpClient toolHttpClient;
+
+    @Autowired(required = false) // Only present when tool.http.async=true
+    private CloseableHttpAsyncClient toolHttpAsyncClient;
+
+    private static final Set<String> SUPPORTED_HTTP_METHODS = Set.of("GET", "POST", "PUT", "DELETE");
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
-    // CRUD Operations
-    public Page<MCPTool> getAllTools(Pageable pageable, List<Long> groupIds) {
-        List<MCPTool> allTools = mcpToolRepository.findAll(); // Fetch all tools
-        List<MCPTool> filteredTools = new ArrayList<>();
-
-        if (groupIds != null && !groupIds.isEmpty()) {
-            Set<Long> filterGroupIdsSet = new HashSet<>(groupIds);
-            for (MCPTool tool : allTools) {
-                if (tool.getGroupIds() != null) {
-                    // Check if any of the tool's groupIds are in the filterGroupIdsSet
-                    boolean matches = tool.getGroupIds().stream().anyMatch(filterGroupIdsSet::contains);
-                    if (matches) {
-                        filteredTools.add(tool);
-                    }
-                }
-            }
-        } else {
-            filteredTools.addAll(allTools);
-        }
+    @Autowired
+    private CatalogCacheSync catalogCacheSync;
 
-        // Apply pagination manually after filtering
-        int start = (int) pageable.getOffset();
-        int end = Math.min((start + pageable.getPageSize()), filteredTools.size());
-        List<MCPTool> pageContent = filteredTools.subList(start, end);
+    private final CatalogCache<MCPTool> toolCatalog =
+            new CatalogCache<>("tools", () -> mcpToolRepository.findAll(), MCPTool::new, MCPTool::getId, MCPTool::getGroupIds);
 
-        Page<MCPTool> mcpTools = new PageImpl<>(pageContent, pageable, filteredTools.size());
+    @PostConstruct
+    public void registerCatalog() {
+        catalogCacheSync.register(toolCatalog);
+    }
+
+    // CRUD Operations
+    public Page<MCPTool> getAllTools(Pageable pageable, List<Long> groupIds) {
+        // Served from the in-memory catalog snapshot instead of a full table scan
+        // The page holds copies, so attaching the worker below does not touch the snapshot
+        Page<MCPTool> mcpTools = toolCatalog.page(pageable, groupIds);
 
         mcpTools.getContent().forEach(t -> {
             log.info("Processing tool: {} with workerId: {}", t.getName(), t.getWorkerId());
@@ -114,25 +125,30 @@ public class MCPToolService {
         return toolOptional;
     }
 
+    /**
+     * Keyset page of tools ordered by id, starting after {@code afterId} (exclusive).
+     */
+    public List<MCPTool> getToolsAfter(Long afterId, int limit) {
+        return mcpToolRepository.findByIdGreaterThanOrderByIdAsc(afterId == null ? 0L : afterId, Limit.of(limit));
+    }
+
     public Optional<MCPTool> getToolByName(String name) {
         return mcpToolRepository.findByName(name);
     }
 
     public List<MCPTool> getToolsByGroupId(Long groupId) {
-        try {
-            String groupIdJson = objectMapper.writeValueAsString(groupId);
-            return mcpToolRepository.findByGroupIdsJsonContaining(groupIdJson);
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-            return List.of();
-        }
+        return mcpToolRepository.findByGroupId(groupId);
     }
 
     @Transactional
     public MCPTool createTool(MCPTool tool) {
         // groupIdsJson will be set by the entity's setGroupIds method
         tool.setWorkerId(tool.getWorkerId()); // Set workerId
-        return mcpToolRepository.save(tool);
+        MCPTool savedTool = mcpToolRepository.save(tool);
+        groupMembershipService.replaceToolGroups(savedTool.getId(), savedTool.getGroupIds());
+        catalogCacheSync.upsert(toolCatalog, savedTool);
+        groupContextCache.invalidate();
+        return savedTool;
     }
 
     @Transactional
@@ -152,12 +168,22 @@ public class MCPToolService {
                     tool.setIsProxy(updatedTool.getIsProxy()); // Copy isProxy field
                     tool.setWorkerId(updatedTool.getWorkerId()); // Set workerId
                     tool.setGroupIds(updatedTool.getGroupIds()); // Update groupIds
-                    return mcpToolRepository.save(tool);
+                    MCPTool savedTool = mcpToolRepository.save(tool);
+                    groupMembershipService.replaceToolGroups(savedTool.getId(), savedTool.getGroupIds());
+                    catalogCacheSync.upsert(toolCatalog, savedTool);
+                    groupContextCache.invalidate();
+                    descriptorCache.invalidateTool(savedTool.getId());
+                    return savedTool;
                 }).orElse(null);
     }
 
+    @Transactional
     public void deleteTool(Long id) {
         mcpToolRepository.deleteById(id);
+        groupMembershipService.replaceToolGroups(id, List.of());
+        catalogCacheSync.remove(toolCatalog, id);
+        groupContextCache.invalidate();
+        descriptorCache.invalidateTool(id);
     }
 
     public long countTools() {
@@ -173,9 +199,29 @@ public class MCPToolService {
             result.setErrorMessage("Tool not found.");
             return result;
         }
+        return executeTool(toolOptional.get(), arguments);
+    }
 
+    /**
+     * Executes a tool without blocking the caller when the non-blocking HTTP client is enabled
+     * ({@code tool.http.async=true}) and the tool is an HTTP tool. Other tools run on the calling thread.
+     */
+    public CompletableFuture<ToolExecutionResult> executeToolAsync(Long id, Map<String, Object> arguments) {
+        Optional<MCPTool> toolOptional = mcpToolRepository.findById(id);
+        if (toolOptional.isEmpty()) {
+            ToolExecutionResult result = new ToolExecutionResult();
+            result.setSuccess(false);
+            result.setErrorMessage("Tool not found.");
+            return CompletableFuture.completedFuture(result);
+        }
         MCPTool tool = toolOptional.get();
+        if (toolHttpAsyncClient != null && tool.getType() == MCPTool.ToolType.HTTP) {
+            return executeHttpToolAsync(tool, arguments);
+        }
+        return CompletableFuture.completedFuture(executeTool(tool, arguments));
+    }
 
+    private ToolExecutionResult executeTool(MCPTool tool, Map<String, Object> arguments) {
         try {
             switch (tool.getType()) {
                 case HTTP:
@@ -205,56 +251,27 @@ public class MCPToolService {
         }
     }
 
-    private ToolExecutionResult executeHttpTool(MCPTool tool, Map<String, Object> arguments) throws IOException {
+    private ToolExecutionResult executeHttpTool(MCPTool tool, Map<String, Object> arguments) {
         ToolExecutionResult result = new ToolExecutionResult();
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            ClassicHttpRequest request;
-
+        try {
             // TODO: Implement logic to use 'arguments' to dynamically construct URL, headers, or body
             // For example, arguments could be used for path variables, query parameters, or to populate a JSON body.
             // This would require a more detailed specification of how arguments map to HTTP request parts.
-
-            String url = tool.getHttpUrl();
-            // Example: if arguments contain a 'path_param', replace it in the URL
-            // if (arguments != null && arguments.containsKey("path_param")) {
-            //     url = url.replace("{path_param}", arguments.get("path_param").toString());
-            // }
-
-            switch (tool.getHttpMethod().toUpperCase()) {
-                case "GET":
-                    request = new HttpGet(url);
-                    break;
-                case "POST":
-                    HttpPost httpPost = new HttpPost(url);
-                    if (tool.getHttpBody() != null && !tool.getHttpBody().isEmpty()) {
-                        httpPost.setEntity(new StringEntity(tool.getHttpBody(), ContentType.APPLICATION_JSON));
-                    }
-                    // TODO: If arguments should be part of the POST body, merge them here
-                    request = httpPost;
-                    break;
-                case "PUT":
-                    HttpPut httpPut = new HttpPut(url);
-                    if (tool.getHttpBody() != null && !tool.getHttpBody().isEmpty()) {
-                        httpPut.setEntity(new StringEntity(tool.getHttpBody(), ContentType.APPLICATION_JSON));
-                    }
-                    // TODO: If arguments should be part of the PUT body, merge them here
-                    request = httpPut;
-                    break;
-                case "DELETE":
-                    request = new HttpDelete(url);
-                    break;
-                default:
-                    result.setSuccess(false);
-                    result.setErrorMessage("Unsupported HTTP method.");
-                    return result;
+            String method = tool.getHttpMethod().toUpperCase();
+            if (!SUPPORTED_HTTP_METHODS.contains(method)) {
+                result.setSuccess(false);
+                result.setErrorMessage("Unsupported HTTP method.");
+                return result;
             }
 
-            if (tool.getHttpHeaders() != null && !tool.getHttpHeaders().isEmpty()) {
-                Map<String, String> headers = objectMapper.readValue(tool.getHttpHeaders(), new TypeReference<Map<String, String>>() {});
-                headers.forEach(request::setHeader);
+            ClassicRequestBuilder builder = ClassicRequestBuilder.create(method).setUri(tool.getHttpUrl());
+            if (hasHttpBody(tool, method)) {
+                builder.setEntity(new StringEntity(tool.getHttpBody(), ContentType.APPLICATION_JSON));
             }
+            readHttpHeaders(tool).forEach(builder::setHeader);
 
-            String responseBody = httpClient.execute(request, response -> {
+            // The shared client keeps connections to the same backend alive between tool calls
+            String responseBody = toolHttpClient.execute(builder.build(), response -> {
                 if (response.getEntity() != null) {
                     return new String(response.getEntity().getContent().readAllBytes());
                 } else {
@@ -271,6 +288,76 @@ public class MCPToolService {
         }
     }
 
+    private CompletableFuture<ToolExecutionResult> executeHttpToolAsync(MCPTool tool, Map<String, Object> arguments) {
+        CompletableFuture<ToolExecutionResult> future = new CompletableFuture<>();
+        try {
+            String method = tool.getHttpMethod().toUpperCase();
+            if (!SUPPORTED_HTTP_METHODS.contains(method)) {
+                ToolExecutionResult result = new ToolExecutionResult();
+                result.setSuccess(false);
+                result.setErrorMessage("Unsupported HTTP method.");
+                return CompletableFuture.completedFuture(result);
+            }
+
+            SimpleRequestBuilder builder = SimpleRequestBuilder.create(method).setUri(tool.getHttpUrl());
+            if (hasHttpBody(tool, method)) {
+                builder.setBody(tool.getHttpBody(), ContentType.APPLICATION_JSON);
+            }
+            readHttpHeaders(tool).forEach(builder::setHeader);
+
+            Future<SimpleHttpResponse> request = toolHttpAsyncClient.execute(builder.build(), new FutureCallback<>() {
+                @Override
+                public void completed(SimpleHttpResponse response) {
+                    ToolExecutionResult result = new ToolExecutionResult();
+                    result.setSuccess(true);
+                    result.setOutput(response.getBodyText() != null ? response.getBodyText() : "");
+                    future.complete(result);
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    ToolExecutionResult result = new ToolExecutionResult();
+                    result.setSuccess(false);
+                    result.setErrorMessage("HTTP Tool execution failed: " + e.getMessage());
+                    future.complete(result);
+                }
+
+                @Override
+                public void cancelled() {
+                    ToolExecutionResult result = new ToolExecutionResult();
+                    result.setSuccess(false);
+                    result.setErrorMessage("HTTP Tool execution cancelled.");
+                    future.complete(result);
+                }
+            });
+            // Cancelling the returned future (e.g. on a tool call timeout) aborts the request
+            future.whenComplete((result, e) -> {
+                if (future.isCancelled()) {
+                    request.cancel(true);
+                }
+            });
+        } catch (Exception e) {
+            ToolExecutionResult result = new ToolExecutionResult();
+            result.setSuccess(false);
+            result.setErrorMessage("HTTP Tool execution failed: " + e.getMessage());
+            future.complete(result);
+        }
+        return future;
+    }
+
+    private boolean hasHttpBody(MCPTool tool, String method) {
+        // TODO: If arguments should be part of the POST/PUT body, merge them here
+        return ("POST".equals(method) || "PUT".equals(method))
+                && tool.getHttpBody() != null && !tool.getHttpBody().isEmpty();
+    }
+
+    private Map<String, String> readHttpHeaders(MCPTool tool) throws JsonProcessingException {
+        if (tool.getHttpHeaders() == null || tool.getHttpHeaders().isEmpty()) {
+            return Map.of();
+        }
+        return objectMapper.readValue(tool.getHttpHeaders(), new TypeReference<Map<String, String>>() {});
+    }
+
     private ToolExecutionResult executeGroovyTool(MCPTool tool, Map<String, Object> arguments) {
         ToolExecutionResult result = new ToolExecutionResult();
         try {
@@ -298,8 +385,8 @@ public class MCPToolService {
             if (arguments != null) {
                 arguments.forEach(binding::setVariable);
             }
-            GroovyShell shell = new GroovyShell(binding);
-            Object scriptResult = shell.evaluate(script);
+            // Reuse the compiled class of this worker; only the instance and binding are per call
+            Object scriptResult = groovyScriptCache.createScript(tool.getWorkerId(), script, binding).run();
             result.setSuccess(true);
             result.setOutput(scriptResult != null ? scriptResult.toString() : "Groovy script executed successfully (no return value).");
             return result;
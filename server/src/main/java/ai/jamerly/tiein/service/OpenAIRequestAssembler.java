@@ -9,6 +9,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.jsoup.internal.StringUtil;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -18,10 +19,16 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import ai.jamerly.tiein.entity.MCPTool;
 import ai.jamerly.tiein.entity.MCPResource;
-import ai.jamerly.tiein.service.MCPResourceService;
 
 
 @Slf4j
@@ -33,8 +40,21 @@ public class OpenAIRequestAssembler extends WebClientAIRequestAssembler {
     @Autowired // Autowire MCPToolService
     private MCPToolService mcpToolService;
 
-    @Autowired // Autowire MCPResourceService
-    private MCPResourceService mcpResourceService;
+    @Autowired
+    private GroupContextCache groupContextCache;
+
+    // Null unless resource.retrieval.enabled is true
+    @Autowired(required = false)
+    private ResourceChunkIndex resourceChunkIndex;
+
+    @Value("${resource.retrieval.top-k:4}")
+    private int retrievalTopK;
+
+    @Autowired
+    private ExecutorService toolCallExecutor;
+
+    @Value("${tool.call.timeout-ms:30000}")
+    private long toolCallTimeoutMs;
 
     private String apiUrl = "https://api.openai.com/v1/chat/completions";
 
@@ -61,35 +81,21 @@ public class OpenAIRequestAssembler extends WebClientAIRequestAssembler {
             try {
                 Long groupId = Long.parseLong(aiRequest.getGroupId());
 
-                // Add tools
-                List<MCPTool> tools = mcpToolService.getToolsByGroupId(groupId);
-                if (!tools.isEmpty()) {
-                    JSONArray toolsArray = new JSONArray();
-                    for (MCPTool tool : tools) {
-                        JSONObject toolObject = new JSONObject();
-                        toolObject.put("type", "function");
-                        JSONObject functionObject = new JSONObject();
-                        functionObject.put("name", "tool_" + tool.getId());
-                        functionObject.put("description", tool.getName() + ":"+ tool.getDescription());
-                        if (tool.getInputSchemaJson() != null && !tool.getInputSchemaJson().isEmpty()) {
-                            functionObject.put("parameters", JSONObject.parseObject(tool.getInputSchemaJson()));
-                        }
-                        toolObject.put("function", functionObject);
-                        toolsArray.add(toolObject);
-                    }
+                // Add tools, pre-built per group
+                JSONArray toolsArray = groupContextCache.getTools(groupId);
+                if (toolsArray != null) {
                     requestBody.put("tools", toolsArray);
                 }
 
-                // Add resources to system message
-                List<ai.jamerly.tiein.entity.MCPResource> resources = mcpResourceService.getResourcesByGroupId(groupId);
-                if (!resources.isEmpty()) {
-                    StringBuilder resourceContent = new StringBuilder();
-                    resourceContent.append("\n\nAvailable Resources:\n");
-                    for (ai.jamerly.tiein.entity.MCPResource resource : resources) {
-                        resourceContent.append("--- Resource Uri: ").append(resource.getUri()).append(" ---\n");
-                        resourceContent.append(resource.getContent()).append("\n");
-                    }
-
+                // Add resources to system message: the chunks most relevant to the user message, or the
+                // whole content of the group's resources when retrieval is disabled or nothing matched
+                String resourceContent = resourceChunkIndex != null
+                        ? buildRetrievedResourceContent(groupId, aiRequest.getPrompt())
+                        : null;
+                if (resourceContent == null) {
+                    resourceContent = groupContextCache.getResourcePreamble(groupId);
+                }
+                if (resourceContent != null) {
                     // Find or create a system message to append resource content
                     List<Map<String, Object>> messages = (List<Map<String, Object>>) requestBody.get("messages");
                     Optional<Map<String, Object>> systemMessageOptional = messages.stream()
@@ -99,11 +105,11 @@ public class OpenAIRequestAssembler extends WebClientAIRequestAssembler {
                     if (systemMessageOptional.isPresent()) {
                         Map<String, Object> systemMessage = systemMessageOptional.get();
                         String currentContent = (String) systemMessage.get("content");
-                        systemMessage.put("content", currentContent + resourceContent.toString());
+                        systemMessage.put("content", currentContent + resourceContent);
                     } else {
                         Map<String, Object> newSystemMessage = new HashMap<>();
                         newSystemMessage.put("role", "system");
-                        newSystemMessage.put("content", resourceContent.toString());
+                        newSystemMessage.put("content", resourceContent);
                         messages.add(0, newSystemMessage); // Add as the first message
                     }
                 }
@@ -118,6 +124,20 @@ public class OpenAIRequestAssembler extends WebClientAIRequestAssembler {
         return new HttpEntity<>(requestBody.toJSONString(), headers);
     }
 
+    private String buildRetrievedResourceContent(Long groupId, String query) {
+        List<ResourceChunkIndex.ScoredChunk> chunks = resourceChunkIndex.search(groupId, query, retrievalTopK);
+        if (chunks.isEmpty()) {
+            return null;
+        }
+        StringBuilder resourceContent = new StringBuilder();
+        resourceContent.append("\n\nRelevant Resources:\n");
+        for (ResourceChunkIndex.ScoredChunk scoredChunk : chunks) {
+            resourceContent.append("--- Resource Uri: ").append(scoredChunk.chunk().uri()).append(" ---\n");
+            resourceContent.append(scoredChunk.chunk().text()).append("\n");
+        }
+        return resourceContent.toString();
+    }
+
     @Override
     public String getApiUrl() {
         return apiUrl;
@@ -135,101 +155,7 @@ public class OpenAIRequestAssembler extends WebClientAIRequestAssembler {
         }
         request.setHistoricalMessages(newHistoricalMessages);
 
-        return super.invoke(request)
-                .doOnError(HttpClientErrorException.class, e -> {
-                    log.error("HTTP Client Error: {}", e.getMessage());
-                })
-                .filter(chunk -> !"[DONE]".equals(chunk.trim()))
-                .collectList()
-                .flatMapMany(chunks -> {
-                    Map<String, JSONObject> accumulatedToolCallsMap = new HashMap<>();
-                    List<String> contentChunks = new ArrayList<>();
-
-                    for (String chunk : chunks) {
-                        try {
-                            JSONObject jsonChunk = JSONObject.parseObject(chunk.substring(chunk.indexOf("{")));
-                            if (jsonChunk.containsKey("choices")) {
-                                JSONArray choices = jsonChunk.getJSONArray("choices");
-                                if (choices != null && !choices.isEmpty()) {
-                                    JSONObject firstChoice = choices.getJSONObject(0);
-                                    if (firstChoice.containsKey("delta")) {
-                                        JSONObject delta = firstChoice.getJSONObject("delta");
-
-                                        if (delta.containsKey("tool_calls")) {
-                                            JSONArray toolCallsDelta = delta.getJSONArray("tool_calls");
-                                            for (int i = 0; i < toolCallsDelta.size(); i++) {
-                                                JSONObject toolCallDelta = toolCallsDelta.getJSONObject(i);
-                                                String toolCallId = toolCallDelta.getString("id");
-
-                                                if (toolCallId != null) {
-                                                    accumulatedToolCallsMap.put(toolCallId, toolCallDelta);
-                                                } else {
-                                                    int index = toolCallDelta.getInteger("index");
-                                                    List<JSONObject> toolCallList = new ArrayList<>(accumulatedToolCallsMap.values());
-                                                    if(index < toolCallList.size()){
-                                                        JSONObject existingToolCall = toolCallList.get(index);
-                                                        if (existingToolCall != null) {
-                                                            JSONObject functionDelta = toolCallDelta.getJSONObject("function");
-                                                            if (functionDelta != null && functionDelta.containsKey("arguments")) {
-                                                                String argsChunk = functionDelta.getString("arguments");
-                                                                JSONObject existingFunction = existingToolCall.getJSONObject("function");
-                                                                String existingArgs = existingFunction.getString("arguments");
-                                                                existingFunction.put("arguments", existingArgs + argsChunk);
-                                                            }
-                                                        }
-                                                    }
-                                                }
-                                            }
-                                        } else if (delta.containsKey("content")) {
-                                            contentChunks.add(chunk);
-                                        }
-                                    }
-                                }
-                            }
-                        } catch (Exception e) {
-                            log.error("Error parsing OpenAI SSE chunk: {} - {}", chunk, e.getMessage());
-                        }
-                    }
-
-                    if (!accumulatedToolCallsMap.isEmpty()) {
-                        List<Map<String, Object>> finalToolCalls = new ArrayList<>();
-                        for (JSONObject toolCallJson : accumulatedToolCallsMap.values()) {
-                            finalToolCalls.add(toolCallJson.to(Map.class));
-                        }
-                        
-                        // Execute tools and make a follow-up call
-                        AIRequest followUpRequest = createFollowUpRequest(request, finalToolCalls);
-                        return super.invoke(followUpRequest)
-                                .filter(followUpChunk -> !"[DONE]".equals(followUpChunk.trim()));
-
-                    } else {
-                        return Flux.fromIterable(contentChunks);
-                    }
-                })
-                .map(chunk -> {
-                    try {
-                        JSONObject jsonChunk = JSONObject.parseObject(chunk);
-                        if (jsonChunk.containsKey("choices")) {
-                            JSONArray choices = jsonChunk.getJSONArray("choices");
-                            if (choices != null && !choices.isEmpty()) {
-                                JSONObject firstChoice = choices.getJSONObject(0);
-                                if (firstChoice.containsKey("delta")) {
-                                    JSONObject delta = firstChoice.getJSONObject("delta");
-                                    if (delta.containsKey("content")) {
-                                        String content = delta.getString("content");
-                                        if (content != null && !content.isEmpty()) {
-                                            return content;
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    } catch (Exception e) {
-                        log.error("Error parsing or processing SSE chunk: {} - {}", chunk, e.getMessage());
-                    }
-                    return ""; // Return empty string for non-content chunks or errors
-                })
-                .filter(content -> !content.isEmpty())
+        return streamCompletion(request, true)
                 .map(data ->{
                     JSONObject jsonObject = new JSONObject();
                     jsonObject.put("chunk", data);
@@ -238,7 +164,91 @@ public class OpenAIRequestAssembler extends WebClientAIRequestAssembler {
                 .concatWith(Flux.just("[DONE]"));
     }
 
-    private AIRequest createFollowUpRequest(AIRequest originalRequest, List<Map<String, Object>> toolCalls) {
+    /**
+     * Streams the content deltas of one completion as soon as they arrive. Tool call deltas are
+     * accumulated on the side; once the upstream completes, the tools are executed and the
+     * follow-up completion is streamed after the content already sent.
+     *
+     * @param request The request to send upstream.
+     * @param executeToolCalls Whether requested tool calls should be executed (false for the follow-up).
+     * @return The content deltas.
+     */
+    private Flux<String> streamCompletion(AIRequest request, boolean executeToolCalls) {
+        return Flux.defer(() -> {
+            // Keyed by the tool call index of the delta, in the order the model announced them
+            Map<Integer, JSONObject> accumulatedToolCalls = new LinkedHashMap<>();
+
+            Flux<String> contentFlux = super.invoke(request)
+                    .doOnError(HttpClientErrorException.class, e -> {
+                        log.error("HTTP Client Error: {}", e.getMessage());
+                    })
+                    .filter(chunk -> !"[DONE]".equals(chunk.trim()))
+                    .concatMapIterable(chunk -> {
+                        String content = parseChunk(chunk, accumulatedToolCalls);
+                        return content == null || content.isEmpty() ? List.of() : List.of(content);
+                    });
+
+            Flux<String> followUpFlux = Flux.defer(() -> {
+                if (!executeToolCalls || accumulatedToolCalls.isEmpty()) {
+                    return Flux.empty();
+                }
+                List<Map<String, Object>> finalToolCalls = new ArrayList<>();
+                for (JSONObject toolCallJson : accumulatedToolCalls.values()) {
+                    finalToolCalls.add(toolCallJson.to(Map.class));
+                }
+                // Execute tools and make a follow-up call
+                return createFollowUpRequest(request, finalToolCalls)
+                        .flatMapMany(followUpRequest -> streamCompletion(followUpRequest, false));
+            });
+
+            return contentFlux.concatWith(followUpFlux);
+        });
+    }
+
+    /**
+     * Parses one SSE chunk, merging any tool call delta into {@code accumulatedToolCalls}.
+     *
+     * @return The content delta of the chunk, or null if it carries none.
+     */
+    private String parseChunk(String chunk, Map<Integer, JSONObject> accumulatedToolCalls) {
+        try {
+            JSONObject jsonChunk = JSONObject.parseObject(chunk.substring(chunk.indexOf("{")));
+            JSONArray choices = jsonChunk.getJSONArray("choices");
+            if (choices == null || choices.isEmpty()) {
+                return null;
+            }
+            JSONObject delta = choices.getJSONObject(0).getJSONObject("delta");
+            if (delta == null) {
+                return null;
+            }
+
+            JSONArray toolCallsDelta = delta.getJSONArray("tool_calls");
+            if (toolCallsDelta != null) {
+                for (int i = 0; i < toolCallsDelta.size(); i++) {
+                    JSONObject toolCallDelta = toolCallsDelta.getJSONObject(i);
+                    Integer index = toolCallDelta.getInteger("index");
+                    if (toolCallDelta.getString("id") != null) {
+                        accumulatedToolCalls.put(index != null ? index : accumulatedToolCalls.size(), toolCallDelta);
+                        continue;
+                    }
+                    JSONObject existingToolCall = accumulatedToolCalls.get(index != null ? index : accumulatedToolCalls.size() - 1);
+                    JSONObject functionDelta = toolCallDelta.getJSONObject("function");
+                    if (existingToolCall != null && functionDelta != null && functionDelta.containsKey("arguments")) {
+                        JSONObject existingFunction = existingToolCall.getJSONObject("function");
+                        String existingArgs = existingFunction.getString("arguments");
+                        existingFunction.put("arguments", (existingArgs == null ? "" : existingArgs) + functionDelta.getString("arguments"));
+                    }
+                }
+                return null;
+            }
+            return delta.getString("content");
+        } catch (Exception e) {
+            log.error("Error parsing OpenAI SSE chunk: {} - {}", chunk, e.getMessage());
+            return null;
+        }
+    }
+
+    Mono<AIRequest> createFollowUpRequest(AIRequest originalRequest, List<Map<String, Object>> toolCalls) {
         List<Map<String, Object>> nextHistoricalMessages = new ArrayList<>(originalRequest.getHistoricalMessages());
 
         // Add the AI's tool_calls message to history
@@ -247,38 +257,104 @@ public class OpenAIRequestAssembler extends WebClientAIRequestAssembler {
         assistantToolCallMessage.put("tool_calls", toolCalls);
         nextHistoricalMessages.add(assistantToolCallMessage);
 
-        // Execute tools and add tool_results to history
+        // Execute the tools of this turn concurrently, each one bounded by the per-call timeout
+        List<CompletableFuture<ToolExecutionResult>> results = new ArrayList<>();
         for (Map<String, Object> toolCall : toolCalls) {
-            String toolId = (String) toolCall.get("id");
-            Map<String, Object> function = (Map<String, Object>) toolCall.get("function");
-            String toolName = (String) function.get("name");
-            String argumentsJsonString = (String) function.get("arguments");
-            Map<String, Object> arguments;
-            if (argumentsJsonString == null || argumentsJsonString.isEmpty()) {
-                arguments = Collections.emptyMap();
-            } else {
-                arguments = JSONObject.parseObject(argumentsJsonString).to(Map.class);
-            }
+            results.add(executeToolCall(toolCall));
+        }
 
-            Long realToolId = Long.parseLong(toolName.split("_")[1]);
+        return Mono.fromFuture(CompletableFuture.allOf(results.toArray(new CompletableFuture[0])))
+                .then(Mono.fromSupplier(() -> {
+                    // Add tool_results to history in the original tool_call_id order
+                    for (int i = 0; i < toolCalls.size(); i++) {
+                        String toolId = (String) toolCalls.get(i).get("id");
+                        ToolExecutionResult result = results.get(i).join();
+                        Map<String, Object> toolResultMessage = new HashMap<>();
+                        toolResultMessage.put("role", "tool");
+                        toolResultMessage.put("tool_call_id", toolId);
+                        if( !result.isSuccess() ){
+                            toolResultMessage.put("is_error", true);
+                        }
+                        // A failed call has no output, the model gets the error message instead
+                        toolResultMessage.put("content", result.getOutput() != null ? result.getOutput() : result.getErrorMessage());
+                        nextHistoricalMessages.add(toolResultMessage);
+                    }
 
-            ToolExecutionResult result = mcpToolService.executeTool(realToolId,arguments);
-            Map<String, Object> toolResultMessage = new HashMap<>();
-            toolResultMessage.put("role", "tool");
-            toolResultMessage.put("tool_call_id", toolId);
-            if( !result.isSuccess() ){
-                toolResultMessage.put("is_error", true);
-            }
-            toolResultMessage.put("content", result.getOutput());
-            nextHistoricalMessages.add(toolResultMessage);
+                    // Make a follow-up OpenAI call with the updated history
+                    AIRequest followUpRequest = new AIRequest();
+                    BeanUtils.copyProperties(originalRequest, followUpRequest);
+                    followUpRequest.setStream(Boolean.TRUE);
+                    followUpRequest.setHistoricalMessages(nextHistoricalMessages);
+                    return followUpRequest;
+                }));
+    }
+
+    CompletableFuture<ToolExecutionResult> executeToolCall(Map<String, Object> toolCall) {
+        CompletableFuture<ToolExecutionResult> result = new CompletableFuture<>();
+        // The deadline runs from submission, time spent queued for a slot counts against it
+        result.orTimeout(toolCallTimeoutMs, TimeUnit.MILLISECONDS);
+        try {
+            // The slot is held while the call is started (script tools run to completion here); an
+            // asynchronous call such as an HTTP request then completes the result without a thread
+            Future<?> task = toolCallExecutor.submit(() -> {
+                if (result.isDone()) {
+                    return; // Timed out while queued
+                }
+                try {
+                    CompletableFuture<ToolExecutionResult> execution = startToolCall(toolCall);
+                    result.whenComplete((r, e) -> {
+                        if (e != null) {
+                            execution.cancel(true); // Aborts an in-flight HTTP request
+                        }
+                    });
+                    execution.whenComplete((r, e) -> {
+                        if (e != null) {
+                            result.completeExceptionally(e);
+                        } else {
+                            result.complete(r);
+                        }
+                    });
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            // On timeout, interrupt a call still holding its slot, or drop it from the queue
+            result.whenComplete((r, e) -> {
+                if (e != null) {
+                    task.cancel(true);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
         }
+        return result.exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            log.error("Tool call {} failed: {}", toolCall.get("id"), cause.getMessage());
+            ToolExecutionResult failed = new ToolExecutionResult();
+            failed.setSuccess(false);
+            if (cause instanceof TimeoutException) {
+                failed.setErrorMessage("Tool execution timed out.");
+            } else if (cause instanceof RejectedExecutionException) {
+                failed.setErrorMessage("Too many tool calls in progress, try again later.");
+            } else {
+                failed.setErrorMessage("Tool execution failed: " + cause.getMessage());
+            }
+            return failed;
+        });
+    }
 
-        // Make a follow-up OpenAI call with the updated history
-        AIRequest followUpRequest = new AIRequest();
-        BeanUtils.copyProperties(originalRequest, followUpRequest);
-        followUpRequest.setStream(Boolean.TRUE);
-        followUpRequest.setHistoricalMessages(nextHistoricalMessages);
+    private CompletableFuture<ToolExecutionResult> startToolCall(Map<String, Object> toolCall) {
+        Map<String, Object> function = (Map<String, Object>) toolCall.get("function");
+        String toolName = (String) function.get("name");
+        String argumentsJsonString = (String) function.get("arguments");
+        Map<String, Object> arguments;
+        if (argumentsJsonString == null || argumentsJsonString.isEmpty()) {
+            arguments = Collections.emptyMap();
+        } else {
+            arguments = JSONObject.parseObject(argumentsJsonString).to(Map.class);
+        }
 
-        return followUpRequest;
+        Long realToolId = Long.parseLong(toolName.split("_")[1]);
+        return mcpToolService.executeToolAsync(realToolId, arguments);
     }
-}
\ No newline at end of file
+}
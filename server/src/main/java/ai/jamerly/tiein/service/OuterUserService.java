@@ -2,16 +2,25 @@ package ai.jamerly.tiein.service;
 
 import ai.jamerly.tiein.util.BizException;
 import com.alibaba.fastjson2.JSONObject;
+import jakarta.annotation.PostConstruct;
 import lombok.Data;
 import org.jsoup.internal.StringUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.Optional;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -26,8 +35,73 @@ public class OuterUserService {
 
     @Autowired
     OpenAIRequestAssembler openAIRequestAssembler;
+
+    @Value("${outer.profile.near-cache-size:10000}")
+    private int nearCacheSize;
+
+    @Value("${outer.profile.near-cache-ttl-seconds:60}")
+    private long nearCacheTtlSeconds;
+
+    @Value("${outer.profile.negative-ttl-seconds:10}")
+    private long negativeTtlSeconds;
+
+    // Bounds the call to the auth URL, and how long concurrent callers wait for it
+    @Value("${outer.profile.timeout-ms:5000}")
+    private long timeoutMs;
+
+    // Node-local copy of recent lookups in front of Redis, including failed ones (negative entries)
+    private Map<String, ProfileEntry> nearCache;
+
+    // Lookups in progress; concurrent callers for the same token wait for the same remote call
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    // A failed lookup keeps only its reason, every caller gets its own exception
+    private record ProfileEntry(String profile, String failure, long expiresAt) {
+    }
+
+    @PostConstruct
+    public void initNearCache() {
+        nearCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ProfileEntry> eldest) {
+                return size() > nearCacheSize;
+            }
+        });
+    }
+
     public String getProfileFromAuth(String authUrl, String auth){
         assert !StringUtil.isBlank(auth);
+        String nearKey = authUrl + "\n" + auth;
+        ProfileEntry entry = nearCache.get(nearKey);
+        if (entry != null && entry.expiresAt() > System.currentTimeMillis()) {
+            if (entry.failure() != null) {
+                throw profileLoadFailed(entry.failure());
+            }
+            return entry.profile();
+        }
+
+        CompletableFuture<String> lookup = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(nearKey, lookup);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            String userProfile = loadProfile(authUrl, auth);
+            long ttl = StringUtil.isBlank(userProfile) ? negativeTtlSeconds : nearCacheTtlSeconds;
+            nearCache.put(nearKey, new ProfileEntry(userProfile, null, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttl)));
+            lookup.complete(userProfile);
+            return userProfile;
+        } catch (RuntimeException e) {
+            String failure = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            nearCache.put(nearKey, new ProfileEntry(null, failure, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(negativeTtlSeconds)));
+            lookup.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(nearKey, lookup);
+        }
+    }
+
+    private String loadProfile(String authUrl, String auth) {
         String profileCache = redisService.get("user_profile_auth:" + auth);
         if( !StringUtil.isBlank(profileCache)){
             return profileCache;
@@ -37,7 +111,7 @@ public class OuterUserService {
                 .header("Authorization", auth)
                 .retrieve()
                 .bodyToMono(String.class)
-                .block();
+                .block(Duration.ofMillis(timeoutMs));
         if( !StringUtil.isBlank(userProfile)){
             redisService.set("user_profile_auth:" + auth,userProfile,
                     1L,TimeUnit.DAYS);
@@ -45,6 +119,24 @@ public class OuterUserService {
         return userProfile;
     }
 
+    private String await(CompletableFuture<String> lookup) {
+        try {
+            return lookup.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw profileLoadFailed("timed out");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw profileLoadFailed("interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw profileLoadFailed(cause.getMessage() == null ? cause.getClass().getSimpleName() : cause.getMessage());
+        }
+    }
+
+    private static BizException profileLoadFailed(String reason) {
+        return new BizException("User profile load failed: " + reason, 500);
+    }
+
     private String _parseUserId(String userProfile){
         String[] userIdPatterns = {
                 "\"userId\"\\s*:\\s*\"([^\"]+)\"",           // "userId":"uuid-string"
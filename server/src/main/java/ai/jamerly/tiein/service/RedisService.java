@@ -1,9 +1,12 @@
 package ai.jamerly.tiein.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 @Service
@@ -51,4 +54,61 @@ public class RedisService {
     public Boolean delete(String key) {
         return stringRedisTemplate.delete(key);
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads all elements of a Redis list.
+     *
+     * @param key The key of the list.
+     * @return The elements in list order, or an empty list if the key does not exist.
+     */
+    public List<String> listRange(String key) {
+        List<String> values = stringRedisTemplate.opsForList().range(key, 0, -1);
+        return values == null ? List.of() : values;
+    }
+
+    /**
+     * Replaces a Redis list with the given elements and sets its expiration time.
+     *
+     * @param key The key of the list.
+     * @param values The new elements, in order.
+     * @param timeout The expiration time.
+     * @param unit The time unit for the expiration.
+     */
+    public void listReplace(String key, List<String> values, long timeout, TimeUnit unit) {
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                operations.delete(key);
+                if (!values.isEmpty()) {
+                    operations.opsForList().rightPushAll(key, values);
+                    operations.expire(key, timeout, unit);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Appends to a Redis list only if it already exists, keeps at most {@code maxSize} of its newest
+     * elements and refreshes its expiration time.
+     *
+     * @param key The key of the list.
+     * @param value The element to append.
+     * @param maxSize The maximum number of elements to keep.
+     * @param timeout The expiration time.
+     * @param unit The time unit for the expiration.
+     */
+    public void listAppendIfPresent(String key, String value, long maxSize, long timeout, TimeUnit unit) {
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                operations.opsForList().rightPushIfPresent(key, value);
+                operations.opsForList().trim(key, -maxSize, -1);
+                operations.expire(key, timeout, unit);
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,445 @@
+package ai.jamerly.tiein.service;
+
+import ai.jamerly.tiein.entity.MCPResource;
+import ai.jamerly.tiein.repository.MCPResourceRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * In-process vector index over the content of {@link MCPResource}s.
+ * <p>
+ * Resource content is split into overlapping chunks when a resource is written, and every chunk is
+ * embedded with the configured {@link EmbeddingProvider}. Chat requests then only carry the top-k
+ * chunks most similar to the user message instead of every resource of the group.
+ * <p>
+ * The index is persisted to {@code resource.retrieval.index-path} after changes and loaded at startup,
+ * where it is reconciled with the database: only resources whose content changed are re-embedded.
+ * Changes are applied once the surrounding transaction has committed, and the resource id is published
+ * on {@link #CHANGE_CHANNEL} so that the other nodes re-index it from the database.
+ * <p>
+ * Only created when {@code resource.retrieval.enabled} is true; callers inject it as optional.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "resource.retrieval.enabled", havingValue = "true")
+public class ResourceChunkIndex {
+
+    private static final int FILE_MAGIC = 0x54494958; // "TIIX"
+    private static final int FILE_VERSION = 1;
+
+    public static final String CHANGE_CHANNEL = "tiein:resource-index:changed";
+
+    // Lets a node skip its own messages, its index has already been updated
+    private static final String NODE_ID = UUID.randomUUID().toString();
+
+    @Autowired
+    private MCPResourceRepository mcpResourceRepository;
+
+    // Only present for a known resource.retrieval.embedding-provider, see init()
+    @Autowired(required = false)
+    private EmbeddingProvider embeddingProvider;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${resource.retrieval.embedding-provider:hashing}")
+    private String embeddingProviderName;
+
+    @Value("${resource.retrieval.chunk-size:800}")
+    private int chunkSize;
+
+    @Value("${resource.retrieval.chunk-overlap:100}")
+    private int chunkOverlap;
+
+    @Value("${resource.retrieval.index-path:./data/resource-index.bin}")
+    private String indexPath;
+
+    private final Map<Long, IndexedResource> resources = new ConcurrentHashMap<>();
+
+    // Saves are coalesced: at most one pending save, run on a single background thread
+    private final ExecutorService persistExecutor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("resource-index-persist").daemon(true).factory());
+    private final AtomicBoolean savePending = new AtomicBoolean();
+
+    public record Chunk(Long resourceId, String uri, String text, float[] vector) {
+    }
+
+    public record ScoredChunk(Chunk chunk, float score) {
+    }
+
+    private record IndexedResource(Long id, String uri, String contentHash, Set<Long> groupIds, List<Chunk> chunks) {
+    }
+
+    @PostConstruct
+    public void init() {
+        if (embeddingProvider == null) {
+            throw new IllegalStateException("Unknown resource.retrieval.embedding-provider '" + embeddingProviderName
+                    + "', supported providers: hashing");
+        }
+        // A cut can fall halfway through a chunk, a larger overlap would step back to where the chunk started
+        if (chunkSize <= 0 || chunkOverlap < 0 || chunkOverlap >= chunkSize / 2) {
+            throw new IllegalStateException("resource.retrieval.chunk-overlap (" + chunkOverlap
+                    + ") must be at least 0 and less than half of resource.retrieval.chunk-size (" + chunkSize + ")");
+        }
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(":", 2);
+            if (parts.length != 2 || NODE_ID.equals(parts[1])) {
+                return;
+            }
+            try {
+                reindex(Long.valueOf(parts[0]));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring malformed resource index change message");
+            }
+        }, new ChannelTopic(CHANGE_CHANNEL));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadAndReconcile() {
+        load();
+        List<MCPResource> all = mcpResourceRepository.findAll();
+        Set<Long> ids = new HashSet<>();
+        int embedded = 0;
+        for (MCPResource resource : all) {
+            ids.add(resource.getId());
+            if (indexResource(resource)) {
+                embedded++;
+            }
+        }
+        resources.keySet().retainAll(ids);
+        log.info("Resource index ready: {} resources, {} re-embedded", resources.size(), embedded);
+        scheduleSave();
+    }
+
+    /**
+     * (Re)indexes a resource after it was created or updated, once the current transaction commits.
+     * Its chunks are only re-embedded if the content changed.
+     */
+    public void index(MCPResource resource) {
+        afterCommit(resource.getId(), () -> {
+            indexResource(resource);
+            scheduleSave();
+        });
+    }
+
+    /**
+     * Drops a deleted resource from the index, once the current transaction commits.
+     */
+    public void remove(Long resourceId) {
+        afterCommit(resourceId, () -> {
+            if (resources.remove(resourceId) != null) {
+                scheduleSave();
+            }
+        });
+    }
+
+    /**
+     * @return The {@code topK} chunks of the group's resources most similar to {@code query}, best first.
+     */
+    public List<ScoredChunk> search(Long groupId, String query, int topK) {
+        if (topK <= 0 || query == null || query.isBlank()) {
+            return List.of();
+        }
+        float[] queryVector = embeddingProvider.embed(query);
+        PriorityQueue<ScoredChunk> best = new PriorityQueue<>(Comparator.comparingDouble(ScoredChunk::score));
+        for (IndexedResource resource : resources.values()) {
+            if (!resource.groupIds().contains(groupId)) {
+                continue;
+            }
+            for (Chunk chunk : resource.chunks()) {
+                float score = dot(queryVector, chunk.vector());
+                if (score <= 0) {
+                    continue; // Nothing in common with the query
+                }
+                if (best.size() < topK) {
+                    best.add(new ScoredChunk(chunk, score));
+                } else if (score > best.peek().score()) {
+                    best.poll();
+                    best.add(new ScoredChunk(chunk, score));
+                }
+            }
+        }
+        List<ScoredChunk> result = new ArrayList<>(best);
+        result.sort(Comparator.comparingDouble(ScoredChunk::score).reversed());
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        persistExecutor.shutdown();
+        try {
+            persistExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void afterCommit(Long resourceId, Runnable change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    applyAndPublish(resourceId, change);
+                }
+            });
+        } else {
+            applyAndPublish(resourceId, change);
+        }
+    }
+
+    private void applyAndPublish(Long resourceId, Runnable change) {
+        change.run();
+        try {
+            stringRedisTemplate.convertAndSend(CHANGE_CHANNEL, resourceId + ":" + NODE_ID);
+        } catch (Exception e) {
+            log.error("Failed to publish resource index change for {}: {}", resourceId, e.getMessage());
+        }
+    }
+
+    // Another node changed the resource, the database has the committed state
+    private void reindex(Long resourceId) {
+        try {
+            mcpResourceRepository.findById(resourceId).ifPresentOrElse(
+                    this::indexResource,
+                    () -> resources.remove(resourceId));
+            scheduleSave();
+        } catch (Exception e) {
+            log.error("Failed to re-index resource {}: {}", resourceId, e.getMessage());
+        }
+    }
+
+    /**
+     * @return Whether the resource's chunks had to be embedded.
+     */
+    private boolean indexResource(MCPResource resource) {
+        String content = resource.getContent() == null ? "" : resource.getContent();
+        String contentHash = sha256(content);
+        Set<Long> groupIds = resource.getGroupIds() == null ? Set.of()
+                : resource.getGroupIds().stream().filter(Objects::nonNull).collect(Collectors.toUnmodifiableSet());
+        IndexedResource existing = resources.get(resource.getId());
+        if (existing != null && existing.contentHash().equals(contentHash)) {
+            // Same content, only the uri or the groups may have changed
+            List<Chunk> chunks = existing.chunks();
+            if (!Objects.equals(existing.uri(), resource.getUri())) {
+                chunks = chunks.stream().map(c -> new Chunk(c.resourceId(), resource.getUri(), c.text(), c.vector())).toList();
+            }
+            resources.put(resource.getId(), new IndexedResource(resource.getId(), resource.getUri(), contentHash, groupIds, chunks));
+            return false;
+        }
+        List<Chunk> chunks = new ArrayList<>();
+        for (String text : split(content)) {
+            chunks.add(new Chunk(resource.getId(), resource.getUri(), text, embeddingProvider.embed(text)));
+        }
+        resources.put(resource.getId(), new IndexedResource(resource.getId(), resource.getUri(), contentHash, groupIds, List.copyOf(chunks)));
+        return true;
+    }
+
+    /**
+     * Splits text into chunks of at most {@code chunkSize} characters overlapping by {@code chunkOverlap},
+     * cutting at a paragraph, line or word boundary in the second half of a chunk where there is one.
+     */
+    private List<String> split(String content) {
+        List<String> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < content.length()) {
+            int end = Math.min(start + chunkSize, content.length());
+            if (end < content.length()) {
+                int cut = lastBoundary(content, start + chunkSize / 2, end);
+                if (cut > 0) {
+                    end = cut;
+                }
+            }
+            String chunk = content.substring(start, end).trim();
+            if (!chunk.isEmpty()) {
+                chunks.add(chunk);
+            }
+            if (end >= content.length()) {
+                break;
+            }
+            start = Math.max(end - chunkOverlap, start + 1);
+        }
+        return chunks;
+    }
+
+    private static int lastBoundary(String content, int from, int to) {
+        for (String boundary : new String[]{"\n\n", "\n", " "}) {
+            int index = content.lastIndexOf(boundary, to - boundary.length());
+            if (index >= from) {
+                return index + boundary.length();
+            }
+        }
+        return -1;
+    }
+
+    private void scheduleSave() {
+        if (savePending.compareAndSet(false, true)) {
+            try {
+                persistExecutor.execute(() -> {
+                    savePending.set(false);
+                    save();
+                });
+            } catch (Exception e) {
+                savePending.set(false); // Shutting down
+            }
+        }
+    }
+
+    private void save() {
+        Path path = Paths.get(indexPath);
+        try {
+            if (path.toAbsolutePath().getParent() != null) {
+                Files.createDirectories(path.toAbsolutePath().getParent());
+            }
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (OutputStream fileOut = Files.newOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+                List<IndexedResource> snapshot = new ArrayList<>(resources.values());
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeUTF(embeddingProvider.id());
+                out.writeInt(embeddingProvider.dimension());
+                out.writeInt(snapshot.size());
+                for (IndexedResource resource : snapshot) {
+                    out.writeLong(resource.id());
+                    writeString(out, resource.uri());
+                    out.writeUTF(resource.contentHash());
+                    out.writeInt(resource.groupIds().size());
+                    for (Long groupId : resource.groupIds()) {
+                        out.writeLong(groupId);
+                    }
+                    out.writeInt(resource.chunks().size());
+                    for (Chunk chunk : resource.chunks()) {
+                        writeString(out, chunk.text());
+                        for (float v : chunk.vector()) {
+                            out.writeFloat(v);
+                        }
+                    }
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Failed to persist resource index to {}: {}", path, e.getMessage());
+        }
+    }
+
+    private void load() {
+        Path path = Paths.get(indexPath);
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (InputStream fileIn = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(fileIn))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                log.warn("Ignoring resource index {} with an unknown format", path);
+                return;
+            }
+            String providerId = in.readUTF();
+            int dimension = in.readInt();
+            if (!providerId.equals(embeddingProvider.id()) || dimension != embeddingProvider.dimension()) {
+                log.info("Resource index {} was built by {}, re-embedding with {}", path, providerId, embeddingProvider.id());
+                return;
+            }
+            int resourceCount = in.readInt();
+            for (int i = 0; i < resourceCount; i++) {
+                Long id = in.readLong();
+                String uri = readString(in);
+                String contentHash = in.readUTF();
+                int groupCount = in.readInt();
+                Set<Long> groupIds = new HashSet<>();
+                for (int g = 0; g < groupCount; g++) {
+                    groupIds.add(in.readLong());
+                }
+                int chunkCount = in.readInt();
+                List<Chunk> chunks = new ArrayList<>(chunkCount);
+                for (int c = 0; c < chunkCount; c++) {
+                    String text = readString(in);
+                    float[] vector = new float[dimension];
+                    for (int d = 0; d < dimension; d++) {
+                        vector[d] = in.readFloat();
+                    }
+                    chunks.add(new Chunk(id, uri, text, vector));
+                }
+                resources.put(id, new IndexedResource(id, uri, contentHash, Set.copyOf(groupIds), List.copyOf(chunks)));
+            }
+        } catch (IOException e) {
+            log.warn("Failed to load resource index from {}, rebuilding it: {}", path, e.getMessage());
+            resources.clear();
+        }
+    }
+
+    // writeUTF is limited to 64KB, chunk text and uris are written as length-prefixed UTF-8 instead
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static String sha256(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package ai.jamerly.tiein.service;
+
+import ai.jamerly.tiein.entity.ChatHistory;
+import ai.jamerly.tiein.entity.ChatSession;
+import ai.jamerly.tiein.repository.ChatSessionRepository;
+import ai.jamerly.tiein.repository.MCPChatHistoryRepository;
+import com.alibaba.fastjson2.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.internal.StringUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a rolling summary of the older turns of long chat sessions.
+ * <p>
+ * Once more than {@code chat.summary.threshold-turns} turns have accumulated after the current
+ * summary, all but the newest {@code chat.summary.keep-recent-turns} of them are folded into the
+ * summary in the background. Requests then carry the summary plus the unsummarized turns, so the
+ * prompt stays bounded however long the session runs.
+ * <p>
+ * The summary boundary is the (timestamp, id) of the last summarized turn, so turns that share its
+ * timestamp are split by id rather than dropped.
+ */
+@Slf4j
+@Service
+public class SessionSummaryService {
+
+    private static final int MAX_TURNS_PER_REFRESH = 100;
+
+    private static final String SUMMARY_INSTRUCTION = "You maintain a running summary of a conversation between a user and an assistant. "
+            + "Update the current summary with the new turns. Keep facts about the user, their requests, decisions made and open issues. "
+            + "Reply with the updated summary only.";
+
+    @Autowired
+    private ChatSessionRepository chatSessionRepository;
+
+    @Autowired
+    private MCPChatHistoryRepository mcpChatHistoryRepository;
+
+    @Autowired
+    private OpenAIRequestAssembler openAIRequestAssembler;
+
+    @Autowired
+    private ChatHistoryWriter chatHistoryWriter;
+
+    @Value("${chat.summary.threshold-turns:30}")
+    private int thresholdTurns;
+
+    @Value("${chat.summary.keep-recent-turns:10}")
+    private int keepRecentTurns;
+
+    @Value("${chat.summary.max-tokens:500}")
+    private int summaryMaxTokens;
+
+    // Sessions with a refresh in progress, so a session is never summarized twice concurrently
+    private final Set<UUID> refreshing = ConcurrentHashMap.newKeySet();
+
+    public boolean isEnabled() {
+        return thresholdTurns > 0;
+    }
+
+    /**
+     * Drops the turns of the context window that the session summary already covers, and adds the
+     * unsummarized turns older than the window, so that every turn is either in the summary or sent
+     * verbatim.
+     *
+     * @param window The context window, oldest first.
+     */
+    public List<ChatHistory> unsummarizedTurns(ChatSession chatSession, List<ChatHistory> window) {
+        Date summarizedUntil = chatSession.getSummarizedUntil();
+        if (summarizedUntil == null) {
+            return window;
+        }
+        List<ChatHistory> unsummarized = new ArrayList<>(window.size());
+        for (ChatHistory turn : window) {
+            if (!isSummarized(chatSession, turn)) {
+                unsummarized.add(turn);
+            }
+        }
+        if (unsummarized.size() < window.size() || unsummarized.isEmpty() || unsummarized.get(0).getTimestamp() == null) {
+            return unsummarized; // The window reaches back to the summary
+        }
+        // Turns between the summary and the window, bounded like a summary refresh
+        List<ChatHistory> gap = mcpChatHistoryRepository.findAfter(chatSession.getId(), summarizedUntil,
+                sinceId(chatSession), unsummarized.get(0).getTimestamp(), PageRequest.of(0, MAX_TURNS_PER_REFRESH));
+        List<ChatHistory> turns = new ArrayList<>(gap.size() + unsummarized.size());
+        for (ChatHistory turn : gap) {
+            if (unsummarized.stream().noneMatch(windowTurn -> isSameTurn(windowTurn, turn))) {
+                turns.add(turn);
+            }
+        }
+        turns.addAll(unsummarized);
+        return turns;
+    }
+
+    /**
+     * Folds older turns into the session summary if enough of them have accumulated. The summary is
+     * generated asynchronously; this method only runs the two bounded queries that decide whether to.
+     * Turns still queued in the write-behind writer count towards the threshold.
+     */
+    public void refreshIfNeeded(UUID sessionId) {
+        if (!isEnabled() || !refreshing.add(sessionId)) {
+            return;
+        }
+        boolean started = false;
+        try {
+            ChatSession chatSession = chatSessionRepository.findById(sessionId).orElse(null);
+            if (chatSession == null) {
+                return;
+            }
+            Date since = chatSession.getSummarizedUntil() == null ? new Date(0) : chatSession.getSummarizedUntil();
+            long pending = chatHistoryWriter.getPending(sessionId).stream()
+                    .filter(turn -> !isSummarized(chatSession, turn))
+                    .count();
+            // Pending rows are read first, a row written in between is then counted twice rather than missed
+            pending += mcpChatHistoryRepository.countAfter(sessionId, since, sinceId(chatSession));
+            if (pending <= thresholdTurns) {
+                return;
+            }
+            int toSummarize = (int) Math.min(pending - keepRecentTurns, MAX_TURNS_PER_REFRESH);
+            if (toSummarize <= 0) {
+                return;
+            }
+            // Only persisted turns are summarized, the queued ones are the newest and stay verbatim
+            List<ChatHistory> turns = mcpChatHistoryRepository.findAfter(sessionId, since, sinceId(chatSession),
+                    null, PageRequest.of(0, toSummarize));
+            if (turns.isEmpty()) {
+                return;
+            }
+            summarize(chatSession.getSummary(), turns);
+            started = true;
+        } catch (Exception e) {
+            log.error("Failed to refresh summary of session {}: {}", sessionId, e.getMessage());
+        } finally {
+            if (!started) {
+                refreshing.remove(sessionId);
+            }
+        }
+    }
+
+    private static boolean isSummarized(ChatSession chatSession, ChatHistory turn) {
+        Date summarizedUntil = chatSession.getSummarizedUntil();
+        if (summarizedUntil == null || turn.getTimestamp() == null) {
+            return false;
+        }
+        int order = Long.compare(turn.getTimestamp().getTime(), summarizedUntil.getTime());
+        if (order != 0) {
+            return order < 0;
+        }
+        // Same timestamp: a turn without an id has not been written yet, so it cannot be in the summary
+        return turn.getId() != null && turn.getId() <= sinceId(chatSession);
+    }
+
+    // Summaries written before the id was recorded covered every turn at their timestamp
+    private static Long sinceId(ChatSession chatSession) {
+        return chatSession.getSummarizedUntilId() == null ? Long.MAX_VALUE : chatSession.getSummarizedUntilId();
+    }
+
+    private static boolean isSameTurn(ChatHistory a, ChatHistory b) {
+        if (a.getId() != null && b.getId() != null) {
+            return a.getId().equals(b.getId());
+        }
+        return a.getTimestamp() != null && b.getTimestamp() != null
+                && a.getTimestamp().getTime() == b.getTimestamp().getTime()
+                && Objects.equals(a.getUserMessage(), b.getUserMessage())
+                && Objects.equals(a.getAiResponse(), b.getAiResponse());
+    }
+
+    private void summarize(String currentSummary, List<ChatHistory> turns) {
+        UUID sessionId = turns.get(0).getChatSessionId();
+        Date summarizedUntil = turns.get(turns.size() - 1).getTimestamp();
+        Long summarizedUntilId = turns.get(turns.size() - 1).getId();
+
+        StringBuilder content = new StringBuilder();
+        content.append("Current summary:\n").append(StringUtil.isBlank(currentSummary) ? "(none)" : currentSummary);
+        content.append("\n\nNew turns:\n");
+        for (ChatHistory turn : turns) {
+            content.append("User: ").append(turn.getUserMessage()).append("\n");
+            content.append("Assistant: ").append(turn.getAiResponse()).append("\n");
+        }
+
+        List<Map<String, Object>> messages = new ArrayList<>();
+        Map<String, Object> systemMessage = new HashMap<>();
+        systemMessage.put("role", "system");
+        systemMessage.put("content", SUMMARY_INSTRUCTION);
+        messages.add(systemMessage);
+        Map<String, Object> userMessage = new HashMap<>();
+        userMessage.put("role", "user");
+        userMessage.put("content", content.toString());
+        messages.add(userMessage);
+
+        AIRequest aiRequest = new AIRequest();
+        aiRequest.setModel("gpt-3.5-turbo");
+        aiRequest.setStream(Boolean.TRUE);
+        aiRequest.setMaxToken(summaryMaxTokens);
+        aiRequest.setHistoricalMessages(messages); // No groupId, the summary request never uses tools
+
+        openAIRequestAssembler.invoke(aiRequest)
+                .filter(chunk -> !StringUtil.isBlank(chunk) && !"[DONE]".equals(chunk.trim()))
+                .map(chunk -> JSONObject.parseObject(chunk).getString("chunk"))
+                .reduce(new StringBuilder(), StringBuilder::append)
+                .publishOn(Schedulers.boundedElastic())
+                .doFinally(signal -> refreshing.remove(sessionId))
+                .subscribe(summary -> {
+                    if (summary.isEmpty()) {
+                        return;
+                    }
+                    chatSessionRepository.findById(sessionId).ifPresent(chatSession -> {
+                        chatSession.setSummary(summary.toString().trim());
+                        chatSession.setSummarizedUntil(summarizedUntil);
+                        chatSession.setSummarizedUntilId(summarizedUntilId);
+                        chatSessionRepository.save(chatSession);
+                    });
+                }, e -> log.error("Failed to summarize session {}: {}", sessionId, e.getMessage()));
+    }
+}
@@ -0,0 +1,75 @@
+package ai.jamerly.tiein.service;
+
+import ai.jamerly.tiein.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Whether the first user has been registered. The flag only ever goes from false to true, so once it
+ * is latched on a node the check is a field read. Nodes that have not latched yet look at a Redis
+ * marker written by whichever node created the first user, and fall back to counting users (which
+ * also covers databases initialized before the marker existed).
+ */
+@Slf4j
+@Component
+public class SystemInitializationState {
+
+    private static final String INITIALIZED_KEY = "tiein:system:initialized";
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RedisService redisService;
+
+    private volatile boolean initialized;
+
+    public boolean isInitialized() {
+        if (initialized) {
+            return true;
+        }
+        try {
+            if (redisService.get(INITIALIZED_KEY) != null) {
+                initialized = true;
+                return true;
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read initialization marker: {}", e.getMessage());
+        }
+        if (userRepository.count() > 0) {
+            latch();
+        }
+        return initialized;
+    }
+
+    /**
+     * Called after a user has been created. Takes effect once the surrounding transaction commits.
+     */
+    public void markInitialized() {
+        if (initialized) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    latch();
+                }
+            });
+        } else {
+            latch();
+        }
+    }
+
+    private void latch() {
+        initialized = true;
+        try {
+            redisService.set(INITIALIZED_KEY, "1", null, null);
+        } catch (Exception e) {
+            log.warn("Failed to write initialization marker: {}", e.getMessage());
+        }
+    }
+}
@@ -2,24 +2,58 @@ package ai.jamerly.tiein.service;
 
 import ai.jamerly.tiein.entity.SystemSetting;
 import ai.jamerly.tiein.repository.SystemSettingRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
+@Slf4j
 @Service
 public class SystemSettingService {
 
+    public static final String CHANGE_CHANNEL = "tiein:settings:changed";
+
     private static final String REGISTRATION_OPEN_KEY = "registration.open";
     private static final String OPENAI_API_KEY = "openai.api.key"; // New constant for OpenAI API Key
 
     @Autowired
     private SystemSettingRepository systemSettingRepository;
 
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    // Backstop for change messages this node missed, the snapshot is reloaded on read once it is older
+    @Value("${system.settings.max-age-seconds:60}")
+    private long maxAgeSeconds;
+
+    // Immutable snapshot of all settings, replaced as a whole after every change on any node
+    private volatile Map<String, String> settings = Map.of();
+    private volatile long loadedAt;
+
+    @PostConstruct
+    public void init() {
+        reload();
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> reload(), new ChannelTopic(CHANGE_CHANNEL));
+    }
+
     public boolean isRegistrationOpen() {
-        Optional<SystemSetting> setting = systemSettingRepository.findBySettingKey(REGISTRATION_OPEN_KEY);
-        return setting.map(systemSetting -> Boolean.parseBoolean(systemSetting.getSettingValue())).orElse(true); // Default to true if not set
+        String value = settings().get(REGISTRATION_OPEN_KEY);
+        return value == null || Boolean.parseBoolean(value); // Default to true if not set
     }
 
     public void setRegistrationOpen(boolean open) {
@@ -33,11 +67,11 @@ public class SystemSettingService {
         }
         setting.setSettingValue(String.valueOf(open));
         systemSettingRepository.save(setting);
+        changed();
     }
 
     public String getOpenAIApiKey() {
-        Optional<SystemSetting> setting = systemSettingRepository.findBySettingKey(OPENAI_API_KEY);
-        return setting.map(SystemSetting::getSettingValue).orElse(null); // Return null if not set
+        return settings().get(OPENAI_API_KEY); // Null if not set
     }
 
     public void setOpenAIApiKey(String apiKey) {
@@ -58,14 +92,69 @@ public class SystemSettingService {
             setting.setSettingValue(apiKey);
             systemSettingRepository.save(setting);
         }
+        changed();
     }
 
     public void deleteOpenAIApiKey() {
         Optional<SystemSetting> settingOptional = systemSettingRepository.findBySettingKey(OPENAI_API_KEY);
         settingOptional.ifPresent(systemSetting -> systemSettingRepository.delete(systemSetting));
+        changed();
     }
 
     public List<SystemSetting> getAllSystemSettings() {
         return systemSettingRepository.findAll();
     }
+
+    private Map<String, String> settings() {
+        if (System.currentTimeMillis() - loadedAt > TimeUnit.SECONDS.toMillis(maxAgeSeconds)) {
+            reloadIfStale();
+        }
+        return settings;
+    }
+
+    private synchronized void reloadIfStale() {
+        if (System.currentTimeMillis() - loadedAt > TimeUnit.SECONDS.toMillis(maxAgeSeconds)) {
+            reload();
+        }
+    }
+
+    // Reloads this node and notifies the others, once the surrounding transaction has committed
+    private void changed() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    reloadAndPublish();
+                }
+            });
+        } else {
+            reloadAndPublish();
+        }
+    }
+
+    private void reloadAndPublish() {
+        reload();
+        try {
+            stringRedisTemplate.convertAndSend(CHANGE_CHANNEL, "reload");
+        } catch (Exception e) {
+            log.error("Failed to publish system setting change: {}", e.getMessage());
+        }
+    }
+
+    // The table holds a handful of rows, so every change reloads all of them
+    private synchronized void reload() {
+        // Set up front as well, so that a failing database is retried once per max age rather than on every read
+        loadedAt = System.currentTimeMillis();
+        try {
+            Map<String, String> loaded = new HashMap<>();
+            for (SystemSetting setting : systemSettingRepository.findAll()) {
+                if (setting.getSettingValue() != null) {
+                    loaded.put(setting.getSettingKey(), setting.getSettingValue());
+                }
+            }
+            settings = Map.copyOf(loaded);
+        } catch (Exception e) {
+            log.error("Failed to load system settings: {}", e.getMessage());
+        }
+    }
 }
@@ -3,9 +3,15 @@ package ai.jamerly.tiein.service;
 import ai.jamerly.tiein.entity.User;
 import ai.jamerly.tiein.repository.UserRepository;
 import ai.jamerly.tiein.security.jwt.JwtUtil; // Use the new JwtUtil
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -13,14 +19,24 @@ import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
+@Slf4j
 @Service
 public class UserService implements UserDetailsService {
 
+    public static final String INVALIDATION_CHANNEL = "tiein:user-details:invalidate";
+
     @Autowired
     private UserRepository userRepository;
 
@@ -33,20 +49,78 @@ public class UserService implements UserDetailsService {
     @Autowired
     private SystemSettingService systemSettingService;
 
+    @Autowired
+    private SystemInitializationState systemInitializationState;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${user.details-cache.size:1000}")
+    private int detailsCacheSize;
+
+    @Value("${user.details-cache.ttl-seconds:30}")
+    private long detailsCacheTtlSeconds;
+
+    // Short-lived principals resolved by JwtRequestFilter and the MCP WebSocket handshake, so that an
+    // authenticated request does not query the user table. Changes are evicted on every node through
+    // INVALIDATION_CHANNEL; the TTL only bounds staleness if a message is lost.
+    private Map<String, CachedUserDetails> detailsByUsername;
+    private Map<String, CachedUserDetails> detailsByPermanentToken;
+
+    private record CachedUserDetails(UserDetails userDetails, long expiresAt) {
+    }
+
+    @PostConstruct
+    public void initDetailsCache() {
+        detailsByUsername = boundedMap(detailsCacheSize);
+        detailsByPermanentToken = boundedMap(detailsCacheSize);
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> evictCachedNow(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(INVALIDATION_CHANNEL));
+    }
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        UserDetails cached = getCached(detailsByUsername, username);
+        if (cached != null) {
+            return cached;
+        }
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found with username: " + username));
-        List<GrantedAuthority> authorities = new ArrayList<>();
-        if (user.getRole() != null && !user.getRole().isEmpty()) {
-            authorities.add(new SimpleGrantedAuthority("ROLE_" + user.getRole()));
-        }
-        return new org.springframework.security.core.userdetails.User(user.getUsername(), user.getPassword(), authorities);
+        UserDetails userDetails = toUserDetails(user);
+        putCached(detailsByUsername, username, userDetails);
+        return userDetails;
     }
 
     public UserDetails loadUserByPermanentToken(String permanentToken) throws UsernameNotFoundException {
+        UserDetails cached = getCached(detailsByPermanentToken, permanentToken);
+        if (cached != null) {
+            return cached;
+        }
         User user = userRepository.findByPermanentToken(permanentToken)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found with permanent token."));
+        UserDetails userDetails = toUserDetails(user);
+        putCached(detailsByPermanentToken, permanentToken, userDetails);
+        putCached(detailsByUsername, user.getUsername(), userDetails);
+        return userDetails;
+    }
+
+    /**
+     * @return The role of the principal, as stored on the user (without the {@code ROLE_} prefix).
+     */
+    public static String getRole(UserDetails userDetails) {
+        for (GrantedAuthority authority : userDetails.getAuthorities()) {
+            if (authority.getAuthority().startsWith("ROLE_")) {
+                return authority.getAuthority().substring("ROLE_".length());
+            }
+        }
+        return null;
+    }
+
+    private UserDetails toUserDetails(User user) {
         List<GrantedAuthority> authorities = new ArrayList<>();
         if (user.getRole() != null && !user.getRole().isEmpty()) {
             authorities.add(new SimpleGrantedAuthority("ROLE_" + user.getRole()));
@@ -54,6 +128,63 @@ public class UserService implements UserDetailsService {
         return new org.springframework.security.core.userdetails.User(user.getUsername(), user.getPassword(), authorities);
     }
 
+    private UserDetails getCached(Map<String, CachedUserDetails> cache, String key) {
+        CachedUserDetails cached = cache.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.expiresAt() < System.currentTimeMillis()) {
+            cache.remove(key);
+            return null;
+        }
+        return cached.userDetails();
+    }
+
+    private void putCached(Map<String, CachedUserDetails> cache, String key, UserDetails userDetails) {
+        cache.put(key, new CachedUserDetails(userDetails, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(detailsCacheTtlSeconds)));
+    }
+
+    // Called once the change is saved, with the username the user had before it. Inside a transaction the
+    // eviction waits for the commit, so a concurrent lookup cannot cache the old row again. Only the
+    // username is published, the permanent token entries are found through their principal.
+    private void evictCached(String username) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictAndPublish(username);
+                }
+            });
+        } else {
+            evictAndPublish(username);
+        }
+    }
+
+    private void evictAndPublish(String username) {
+        evictCachedNow(username);
+        try {
+            stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, username);
+        } catch (Exception e) {
+            log.error("Failed to publish user details invalidation for {}: {}", username, e.getMessage());
+        }
+    }
+
+    private void evictCachedNow(String username) {
+        detailsByUsername.remove(username);
+        synchronized (detailsByPermanentToken) {
+            detailsByPermanentToken.values().removeIf(cached -> username.equals(cached.userDetails().getUsername()));
+        }
+    }
+
+    private static <V> Map<String, V> boundedMap(int maxSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
     public String login(String username, String password) {
         Optional<User> userOptional = userRepository.findByUsername(username);
         if (userOptional.isPresent()) {
@@ -72,6 +203,7 @@ public class UserService implements UserDetailsService {
             if (passwordEncoder.matches(oldPassword, user.getPassword())) {
                 user.setPassword(passwordEncoder.encode(newPassword));
                 userRepository.save(user);
+                evictCached(user.getUsername());
                 return true;
             }
         }
@@ -95,7 +227,9 @@ public class UserService implements UserDetailsService {
             newUser.setRole("USER");
         }
         newUser.generateNewPermanentToken(); // Generate permanent token for new user
-        return userRepository.save(newUser);
+        User savedUser = userRepository.save(newUser);
+        systemInitializationState.markInitialized();
+        return savedUser;
     }
 
     public String getPermanentTokenForUser(String username) {
@@ -109,6 +243,7 @@ public class UserService implements UserDetailsService {
                 .map(user -> {
                     user.generateNewPermanentToken();
                     userRepository.save(user);
+                    evictCached(user.getUsername()); // Drops the old permanent token
                     return user.getPermanentToken();
                 })
                 .orElse(null);
@@ -129,24 +264,34 @@ public class UserService implements UserDetailsService {
     public User createUser(User user) {
         user.setPassword(passwordEncoder.encode(user.getPassword()));
         user.generateNewPermanentToken(); // Generate permanent token for manually created user
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        systemInitializationState.markInitialized();
+        return savedUser;
     }
 
     public User updateUser(Long id, User updatedUser) {
         return userRepository.findById(id)
                 .map(user -> {
+                    String oldUsername = user.getUsername();
                     user.setUsername(updatedUser.getUsername());
                     if (updatedUser.getPassword() != null && !updatedUser.getPassword().isEmpty()) {
                         user.setPassword(passwordEncoder.encode(updatedUser.getPassword()));
                     }
                     user.setRole(updatedUser.getRole());
                     // Do not update permanent token here unless explicitly requested
-                    return userRepository.save(user);
+                    User savedUser = userRepository.save(user);
+                    evictCached(oldUsername);
+                    if (!oldUsername.equals(savedUser.getUsername())) {
+                        evictCached(savedUser.getUsername());
+                    }
+                    return savedUser;
                 }).orElse(null);
     }
 
     public void deleteUser(Long id) {
+        Optional<User> user = userRepository.findById(id);
         userRepository.deleteById(id);
+        user.ifPresent(u -> evictCached(u.getUsername()));
     }
 
     public Optional<User> findByUsername(String username) {
@@ -19,11 +19,14 @@ public class WorkerService {
 
     private final WorkerRepository workerRepository;
     private final SystemSettingService systemSettingService;
+    private final GroovyScriptCache groovyScriptCache;
     private final WebClient webClient;
 
-    public WorkerService(WorkerRepository workerRepository, SystemSettingService systemSettingService, WebClient.Builder webClientBuilder) {
+    public WorkerService(WorkerRepository workerRepository, SystemSettingService systemSettingService,
+                         GroovyScriptCache groovyScriptCache, WebClient.Builder webClientBuilder) {
         this.workerRepository = workerRepository;
         this.systemSettingService = systemSettingService;
+        this.groovyScriptCache = groovyScriptCache;
         this.webClient = webClientBuilder.baseUrl("https://api.openai.com/v1").build();
     }
 
@@ -53,11 +56,13 @@ public class WorkerService {
         existingWorker.setName(workerDto.getName());
         existingWorker.setScript(workerDto.getScript());
         Worker updatedWorker = workerRepository.save(existingWorker);
+        groovyScriptCache.invalidate(id);
         return convertToDto(updatedWorker);
     }
 
     public void deleteWorker(Long id) {
         workerRepository.deleteById(id);
+        groovyScriptCache.invalidate(id);
     }
 
     public String generateScript(String prompt) {
@@ -0,0 +1,111 @@
+package ai.jamerly.tiein.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class MCPWebSocketHandlerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final WebSocketSession session = mock(WebSocketSession.class);
+    private final WebSocketSession concurrentSession = mock(WebSocketSession.class);
+    private final Map<String, Object> attributes = new HashMap<>();
+    private final Semaphore inFlight = new Semaphore(2);
+    private MCPWebSocketHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        handler = new MCPWebSocketHandler();
+        ReflectionTestUtils.setField(handler, "maxInFlightRequests", 2);
+        attributes.put(MCPWebSocketHandler.USERNAME_SESSION_ATTRIBUTE, "admin");
+        attributes.put("concurrentSession", concurrentSession);
+        attributes.put("inFlight", inFlight);
+        when(session.getAttributes()).thenReturn(attributes);
+    }
+
+    @Test
+    void batchUpToTheInFlightLimitIsAdmittedOnAnIdleConnection() throws Exception {
+        handler.handleTextMessage(session, new TextMessage(
+                "[{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"ping\"},{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"ping\"}]"));
+
+        JsonNode responses = nextMessage();
+        assertTrue(responses.isArray());
+        assertEquals(2, responses.size());
+        assertEquals(1, responses.get(0).get("id").asInt());
+        assertEquals(2, responses.get(1).get("id").asInt());
+        assertFalse(responses.get(0).has("error"));
+        waitForPermits();
+    }
+
+    @Test
+    void batchLargerThanTheLimitIsRejectedAsInvalid() throws Exception {
+        handler.handleTextMessage(session, new TextMessage(
+                "[{\"id\":1,\"method\":\"ping\"},{\"id\":2,\"method\":\"ping\"},{\"id\":3,\"method\":\"ping\"}]"));
+
+        JsonNode response = nextMessage();
+        assertEquals(-32600, response.get("error").get("code").asInt());
+        assertEquals(2, inFlight.availablePermits());
+    }
+
+    @Test
+    void failedNotificationInBatchGetsNoResponse() throws Exception {
+        handler.handleTextMessage(session, new TextMessage(
+                "[{\"jsonrpc\":\"2.0\",\"method\":\"no/such-method\"},{\"jsonrpc\":\"2.0\",\"id\":7,\"method\":\"ping\"}]"));
+
+        JsonNode responses = nextMessage();
+        assertEquals(1, responses.size());
+        assertEquals(7, responses.get(0).get("id").asInt());
+    }
+
+    @Test
+    void malformedBatchElementsAreAnswered() {
+        JsonNode responses = handler.processBatch(objectMapper.valueToTree(List.of(1, Map.of("id", 3))));
+        assertEquals(2, responses.size());
+        assertEquals(-32600, responses.get(0).get("error").get("code").asInt());
+        assertEquals(-32600, responses.get(1).get("error").get("code").asInt());
+    }
+
+    @Test
+    void batchOfOnlyNotificationsSendsNothing() throws Exception {
+        handler.handleTextMessage(session, new TextMessage(
+                "[{\"jsonrpc\":\"2.0\",\"method\":\"notifications/initialized\"},{\"jsonrpc\":\"2.0\",\"method\":\"ping\"}]"));
+
+        waitForPermits();
+        verify(concurrentSession, never()).sendMessage(any());
+    }
+
+    @Test
+    void singleNotificationGetsNoResponse() throws Exception {
+        handler.handleTextMessage(session, new TextMessage("{\"jsonrpc\":\"2.0\",\"method\":\"notifications/initialized\"}"));
+
+        waitForPermits();
+        verify(concurrentSession, never()).sendMessage(any());
+    }
+
+    private JsonNode nextMessage() throws Exception {
+        ArgumentCaptor<WebSocketMessage<?>> captor = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(concurrentSession, timeout(5000)).sendMessage(captor.capture());
+        return objectMapper.readTree(((TextMessage) captor.getValue()).getPayload());
+    }
+
+    private void waitForPermits() throws InterruptedException {
+        // Permits are given back once the request has been processed (and its response sent)
+        assertTrue(inFlight.tryAcquire(2, 5, java.util.concurrent.TimeUnit.SECONDS));
+        inFlight.release(2);
+    }
+}
@@ -0,0 +1,72 @@
+package ai.jamerly.tiein.security.jwt;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtUtilTest {
+
+    private static final String SECRET = Base64.getEncoder().encodeToString("0123456789abcdef0123456789abcdef".getBytes());
+
+    @Test
+    void verifiedClaimsAreReused() {
+        JwtUtil jwtUtil = jwtUtil(60_000, 10);
+        String token = jwtUtil.generateToken("alice");
+
+        Claims first = jwtUtil.extractAllClaims(token);
+        assertEquals("alice", first.getSubject());
+        assertSame(first, jwtUtil.extractAllClaims(token));
+    }
+
+    @Test
+    void cachedTokenIsRejectedOnceExpired() throws InterruptedException {
+        JwtUtil jwtUtil = jwtUtil(1_000, 10);
+        String token = jwtUtil.generateToken("alice");
+        Claims claims = jwtUtil.extractAllClaims(token);
+
+        // exp has second precision, wait until it is in the past
+        long waitMs = claims.getExpiration().getTime() - System.currentTimeMillis() + 50;
+        Thread.sleep(Math.max(0, waitMs));
+
+        assertThrows(ExpiredJwtException.class, () -> jwtUtil.extractAllClaims(token));
+    }
+
+    @Test
+    void tamperedTokenIsNotServedFromTheCache() {
+        JwtUtil jwtUtil = jwtUtil(60_000, 10);
+        String token = jwtUtil.generateToken("alice");
+        jwtUtil.extractAllClaims(token);
+
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+        assertThrows(SignatureException.class, () -> jwtUtil.extractAllClaims(tampered));
+    }
+
+    @Test
+    void cacheIsBounded() {
+        JwtUtil jwtUtil = jwtUtil(60_000, 1);
+        String alice = jwtUtil.generateToken("alice");
+        String bob = jwtUtil.generateToken("bob");
+
+        Claims first = jwtUtil.extractAllClaims(alice);
+        jwtUtil.extractAllClaims(bob); // Evicts alice
+
+        Claims again = jwtUtil.extractAllClaims(alice);
+        assertNotSame(first, again);
+        assertEquals("alice", again.getSubject());
+    }
+
+    private static JwtUtil jwtUtil(long expiration, int cacheSize) {
+        JwtUtil jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secret", SECRET);
+        ReflectionTestUtils.setField(jwtUtil, "expiration", expiration);
+        ReflectionTestUtils.setField(jwtUtil, "claimsCacheSize", cacheSize);
+        jwtUtil.init();
+        return jwtUtil;
+    }
+}
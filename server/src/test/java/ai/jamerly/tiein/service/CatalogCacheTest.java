@@ -0,0 +1,151 @@
+package ai.jamerly.tiein.service;
+
+import ai.jamerly.tiein.entity.MCPTool;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CatalogCacheTest {
+
+    private final List<MCPTool> rows = new ArrayList<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final RedisMessageListenerContainer listenerContainer = mock(RedisMessageListenerContainer.class);
+
+    private CatalogCache<MCPTool> cache;
+    private CatalogCacheSync sync;
+    private MessageListener listener;
+
+    @BeforeEach
+    void setUp() {
+        rows.add(tool(1L, "search", List.of(10L)));
+        rows.add(tool(2L, "weather", List.of(10L, 20L)));
+        cache = new CatalogCache<>("tools", () -> {
+            loads.incrementAndGet();
+            return rows;
+        }, MCPTool::new, MCPTool::getId, MCPTool::getGroupIds);
+
+        sync = new CatalogCacheSync();
+        ReflectionTestUtils.setField(sync, "stringRedisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(sync, "redisMessageListenerContainer", listenerContainer);
+        ReflectionTestUtils.setField(sync, "maxAgeSeconds", 300L);
+        sync.subscribe();
+        ArgumentCaptor<MessageListener> captor = ArgumentCaptor.forClass(MessageListener.class);
+        verify(listenerContainer).addMessageListener(captor.capture(), any(Topic.class));
+        listener = captor.getValue();
+        sync.register(cache);
+    }
+
+    @Test
+    void readersGetCopiesOfTheSnapshot() {
+        MCPTool first = cache.page(Pageable.unpaged(), null).getContent().get(0);
+        first.setName("changed");
+        first.setWorker(new ai.jamerly.tiein.entity.Worker());
+
+        MCPTool again = cache.page(Pageable.unpaged(), null).getContent().get(0);
+        assertEquals("search", again.getName());
+        assertNull(again.getWorker());
+        assertNotSame(first, again);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void filtersByGroup() {
+        assertEquals(List.of(2L), cache.page(Pageable.unpaged(), List.of(20L)).map(MCPTool::getId).getContent());
+        assertEquals(List.of(1L, 2L), cache.page(Pageable.unpaged(), List.of(10L, 20L)).map(MCPTool::getId).getContent());
+    }
+
+    @Test
+    void changeIsAppliedAfterCommitAndPublished() {
+        cache.page(Pageable.unpaged(), null);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            MCPTool saved = tool(3L, "translate", List.of(20L));
+            sync.upsert(cache, saved);
+            saved.setName("modified by the caller");
+            assertEquals(2, cache.page(Pageable.unpaged(), null).getTotalElements()); // Not committed yet
+            verifyNoInteractions(redisTemplate);
+
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        List<MCPTool> tools = cache.page(Pageable.unpaged(), List.of(20L)).getContent();
+        assertEquals(List.of(2L, 3L), tools.stream().map(MCPTool::getId).toList());
+        assertEquals(1, loads.get());
+        verify(redisTemplate).convertAndSend(eq(CatalogCacheSync.INVALIDATION_CHANNEL), startsWith("tools:"));
+    }
+
+    @Test
+    void removeDropsTheEntity() {
+        cache.page(Pageable.unpaged(), null);
+        sync.remove(cache, 1L);
+        assertEquals(List.of(2L), cache.page(Pageable.unpaged(), List.of(10L)).map(MCPTool::getId).getContent());
+    }
+
+    @Test
+    void invalidationFromAnotherNodeReloads() {
+        cache.page(Pageable.unpaged(), null);
+        rows.add(tool(3L, "translate", List.of(20L)));
+
+        listener.onMessage(new DefaultMessage(CatalogCacheSync.INVALIDATION_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                "tools:other-node".getBytes(StandardCharsets.UTF_8)), null);
+
+        assertEquals(3, cache.page(Pageable.unpaged(), null).getTotalElements());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void ownInvalidationDoesNotReload() {
+        cache.page(Pageable.unpaged(), null);
+        sync.upsert(cache, tool(3L, "translate", List.of(20L)));
+        ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).convertAndSend(anyString(), message.capture());
+
+        listener.onMessage(new DefaultMessage(CatalogCacheSync.INVALIDATION_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                message.getValue().getBytes(StandardCharsets.UTF_8)), null);
+
+        assertEquals(3, cache.page(Pageable.unpaged(), null).getTotalElements());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void expiredSnapshotIsReloaded() {
+        cache.setMaxAgeMillis(-1);
+        cache.page(Pageable.unpaged(), null);
+        cache.page(Pageable.unpaged(), null);
+        assertEquals(2, loads.get());
+    }
+
+    private static MCPTool tool(Long id, String name, List<Long> groupIds) {
+        MCPTool tool = new MCPTool();
+        tool.setId(id);
+        tool.setName(name);
+        tool.setType(MCPTool.ToolType.HTTP);
+        tool.setGroupIds(groupIds);
+        return tool;
+    }
+}
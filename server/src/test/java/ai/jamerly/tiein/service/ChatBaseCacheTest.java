@@ -0,0 +1,150 @@
+package ai.jamerly.tiein.service;
+
+import ai.jamerly.tiein.entity.MCPChatBase;
+import ai.jamerly.tiein.repository.MCPChatBaseRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ChatBaseCacheTest {
+
+    private final MCPChatBaseRepository repository = mock(MCPChatBaseRepository.class);
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final RedisMessageListenerContainer listenerContainer = mock(RedisMessageListenerContainer.class);
+
+    private ChatBaseCache cache;
+    private MessageListener listener;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ChatBaseCache();
+        ReflectionTestUtils.setField(cache, "mcpChatBaseRepository", repository);
+        ReflectionTestUtils.setField(cache, "stringRedisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(cache, "redisMessageListenerContainer", listenerContainer);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 300L);
+        cache.subscribe();
+        ArgumentCaptor<MessageListener> captor = ArgumentCaptor.forClass(MessageListener.class);
+        verify(listenerContainer).addMessageListener(captor.capture(), any(Topic.class));
+        listener = captor.getValue();
+    }
+
+    @Test
+    void repeatedReadsHitTheCache() {
+        when(repository.findById(1L)).thenReturn(Optional.of(chatBase(1L, "app-1", "v1")));
+
+        assertEquals("v1", cache.getById(1L).orElseThrow().getName());
+        assertEquals("v1", cache.getByAppId("app-1").orElseThrow().getName());
+
+        verify(repository, times(1)).findById(1L);
+        verify(repository, never()).findByAppId("app-1");
+    }
+
+    @Test
+    void invalidationFromAnotherNodeDropsTheEntry() {
+        when(repository.findById(1L))
+                .thenReturn(Optional.of(chatBase(1L, "app-1", "v1")))
+                .thenReturn(Optional.of(chatBase(1L, "app-1", "v2")));
+        cache.getById(1L);
+
+        listener.onMessage(message("1"), null);
+
+        assertEquals("v2", cache.getById(1L).orElseThrow().getName());
+    }
+
+    @Test
+    void localInvalidationIsPublished() {
+        when(repository.findById(1L))
+                .thenReturn(Optional.of(chatBase(1L, "app-1", "v1")))
+                .thenReturn(Optional.of(chatBase(1L, "app-1", "v2")));
+        cache.getById(1L);
+
+        cache.invalidate(1L);
+
+        verify(redisTemplate).convertAndSend(eq(ChatBaseCache.INVALIDATION_CHANNEL), eq("1"));
+        assertEquals("v2", cache.getById(1L).orElseThrow().getName());
+    }
+
+    @Test
+    void loadRacingWithAnInvalidationIsNotCached() {
+        when(repository.findById(1L))
+                .thenAnswer(invocation -> {
+                    // The row changes while the stale copy is on its way back
+                    listener.onMessage(message("1"), null);
+                    return Optional.of(chatBase(1L, "app-1", "v1"));
+                })
+                .thenReturn(Optional.of(chatBase(1L, "app-1", "v2")));
+
+        assertEquals("v1", cache.getById(1L).orElseThrow().getName());
+        assertEquals("v2", cache.getById(1L).orElseThrow().getName());
+    }
+
+    @Test
+    void expiredEntriesAreReloaded() {
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 0L);
+        when(repository.findById(1L))
+                .thenReturn(Optional.of(chatBase(1L, "app-1", "v1")))
+                .thenReturn(Optional.of(chatBase(1L, "app-1", "v2")));
+        cache.getById(1L);
+
+        long deadline = System.currentTimeMillis() + 2;
+        while (System.currentTimeMillis() <= deadline) {
+            Thread.onSpinWait();
+        }
+
+        assertEquals("v2", cache.getById(1L).orElseThrow().getName());
+    }
+
+    @Test
+    void regeneratedAppIdIsNotServedFromTheOldMapping() {
+        when(repository.findByAppId("old-app")).thenReturn(Optional.of(chatBase(1L, "old-app", "v1")));
+        cache.getByAppId("old-app");
+
+        // The invalidation was missed, but a later load by id sees the new appId
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 0L);
+        when(repository.findById(1L)).thenReturn(Optional.of(chatBase(1L, "new-app", "v2")));
+        long deadline = System.currentTimeMillis() + 2;
+        while (System.currentTimeMillis() <= deadline) {
+            Thread.onSpinWait();
+        }
+        cache.getById(1L);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 300L);
+
+        when(repository.findByAppId("old-app")).thenReturn(Optional.empty());
+        assertTrue(cache.getByAppId("old-app").isEmpty());
+        assertEquals("v2", cache.getByAppId("new-app").orElseThrow().getName());
+        verify(repository, times(2)).findByAppId("old-app");
+        verify(repository, never()).findByAppId("new-app");
+    }
+
+    @Test
+    void malformedMessagesAreIgnored() {
+        listener.onMessage(message("not-a-number"), null);
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage(ChatBaseCache.INVALIDATION_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static MCPChatBase chatBase(Long id, String appId, String name) {
+        MCPChatBase chatBase = new MCPChatBase();
+        chatBase.setId(id);
+        chatBase.setAppId(appId);
+        chatBase.setName(name);
+        return chatBase;
+    }
+}
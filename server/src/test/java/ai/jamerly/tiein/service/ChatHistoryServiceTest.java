@@ -0,0 +1,91 @@
+package ai.jamerly.tiein.service;
+
+import ai.jamerly.tiein.entity.ChatHistory;
+import ai.jamerly.tiein.entity.MCPChatBase;
+import ai.jamerly.tiein.repository.MCPChatHistoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ChatHistoryServiceTest {
+
+    private final UUID sessionId = UUID.randomUUID();
+    private final MCPChatHistoryRepository repository = mock(MCPChatHistoryRepository.class);
+    private final ChatHistoryWriter writer = mock(ChatHistoryWriter.class);
+    private final HotSessionCache hotSessionCache = mock(HotSessionCache.class);
+    private ChatHistoryService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ChatHistoryService();
+        ReflectionTestUtils.setField(service, "mcpChatHistoryRepository", repository);
+        ReflectionTestUtils.setField(service, "chatHistoryWriter", writer);
+        ReflectionTestUtils.setField(service, "hotSessionCache", hotSessionCache);
+        when(hotSessionCache.isEnabled()).thenReturn(true);
+        when(hotSessionCache.getMaxTurns()).thenReturn(50);
+        when(hotSessionCache.getRecentTurns(sessionId)).thenReturn(null); // Ring miss
+    }
+
+    @Test
+    void seedIncludesTurnsStillQueuedInTheWriter() {
+        ChatHistory persisted = turn("hello", 1000);
+        ChatHistory queued = turn("how are you", 2000);
+        when(repository.findByChatSessionIdOrderByTimestampDescIdDesc(eq(sessionId), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(new ArrayList<>(List.of(persisted))));
+        when(writer.getPending(sessionId)).thenReturn(List.of(queued));
+
+        List<ChatHistory> window = service.queryWindowBySessionId(sessionId, MCPChatBase.HistoryMode.LAST_TURNS, 10);
+
+        assertEquals(List.of("hello", "how are you"), window.stream().map(ChatHistory::getUserMessage).toList());
+        ArgumentCaptor<List<ChatHistory>> seeded = ArgumentCaptor.forClass(List.class);
+        verify(hotSessionCache).seed(eq(sessionId), seeded.capture());
+        assertEquals(2, seeded.getValue().size());
+        verify(hotSessionCache, never()).evict(any());
+    }
+
+    @Test
+    void turnWrittenWhileSeedingIsNotDuplicated() {
+        ChatHistory queued = turn("hello", 1000);
+        ChatHistory persisted = turn("hello", 1000); // Same turn, flushed between the two reads
+        when(repository.findByChatSessionIdOrderByTimestampDescIdDesc(eq(sessionId), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(new ArrayList<>(List.of(persisted))));
+        when(writer.getPending(sessionId)).thenReturn(List.of(queued), List.of());
+
+        List<ChatHistory> window = service.queryWindowBySessionId(sessionId, MCPChatBase.HistoryMode.LAST_TURNS, 10);
+
+        assertEquals(1, window.size());
+    }
+
+    @Test
+    void ringIsDroppedWhenATurnIsQueuedWhileSeeding() {
+        when(repository.findByChatSessionIdOrderByTimestampDescIdDesc(eq(sessionId), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(new ArrayList<>()));
+        when(writer.getPending(sessionId)).thenReturn(List.of(), List.of(turn("late", 3000)));
+
+        service.queryWindowBySessionId(sessionId, MCPChatBase.HistoryMode.LAST_TURNS, 10);
+
+        verify(hotSessionCache).evict(sessionId);
+    }
+
+    private ChatHistory turn(String userMessage, long timestamp) {
+        ChatHistory turn = new ChatHistory();
+        turn.setChatSessionId(sessionId);
+        turn.setUserMessage(userMessage);
+        turn.setAiResponse("reply to " + userMessage);
+        turn.setTimestamp(new Date(timestamp));
+        return turn;
+    }
+}
@@ -0,0 +1,130 @@
+package ai.jamerly.tiein.service;
+
+import ai.jamerly.tiein.entity.ChatHistory;
+import ai.jamerly.tiein.repository.MCPChatHistoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ChatHistoryWriterTest {
+
+    private final UUID sessionId = UUID.randomUUID();
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final MCPChatHistoryRepository repository = mock(MCPChatHistoryRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ChatHistoryWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        writer = new ChatHistoryWriter();
+        ReflectionTestUtils.setField(writer, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(writer, "mcpChatHistoryRepository", repository);
+        ReflectionTestUtils.setField(writer, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(writer, "batchSize", 3);
+        ReflectionTestUtils.setField(writer, "flushIntervalMs", 50L);
+        ReflectionTestUtils.setField(writer, "queueCapacity", 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.stop();
+    }
+
+    @Test
+    void queuedRowsAreWrittenAsOneBatch() {
+        writer.start();
+        writer.enqueue(turn("a"));
+        writer.enqueue(turn("b"));
+        writer.enqueue(turn("c"));
+
+        ArgumentCaptor<Collection<ChatHistory>> batch = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate, timeout(5000)).batchUpdate(anyString(), batch.capture(), eq(3), any(ParameterizedPreparedStatementSetter.class));
+        assertEquals(List.of("a", "b", "c"), batch.getValue().stream().map(ChatHistory::getUserMessage).toList());
+        assertNotNull(batch.getValue().iterator().next().getTimestamp());
+        verifyNoInteractions(repository);
+        awaitNoPending();
+    }
+
+    @Test
+    void rowsArePendingUntilWritten() {
+        writer.start();
+        ChatHistory row = turn("a");
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenAnswer(invocation -> {
+                    assertEquals(List.of(row), writer.getPending(sessionId)); // Still pending while the insert runs
+                    return new int[][]{{1}};
+                });
+
+        writer.enqueue(row);
+
+        verify(jdbcTemplate, timeout(5000)).batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+        awaitNoPending();
+    }
+
+    @Test
+    void failedBatchFallsBackToSavingRowsOneByOne() {
+        writer.start();
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new RuntimeException("deadlock"));
+        when(repository.save(argThat(row -> "b".equals(row.getUserMessage())))).thenThrow(new RuntimeException("too long"));
+
+        writer.enqueue(turn("a"));
+        writer.enqueue(turn("b"));
+
+        verify(repository, timeout(5000).times(2)).save(any(ChatHistory.class));
+        awaitNoPending();
+        assertEquals(1.0, meterRegistry.counter("chat.history.failed").count());
+    }
+
+    @Test
+    void stopFlushesRemainingRowsAndLaterRowsAreSavedSynchronously() {
+        writer.start();
+        List<String> written = new ArrayList<>();
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenAnswer(invocation -> {
+                    Collection<ChatHistory> rows = invocation.getArgument(1);
+                    rows.forEach(row -> written.add(row.getUserMessage()));
+                    return new int[][]{};
+                });
+        writer.enqueue(turn("a"));
+        writer.enqueue(turn("b"));
+        writer.stop();
+        assertEquals(List.of("a", "b"), written);
+
+        writer.enqueue(turn("c"));
+        verify(repository).save(argThat(row -> "c".equals(row.getUserMessage())));
+        assertTrue(writer.getPending(sessionId).isEmpty());
+    }
+
+    private void awaitNoPending() {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!writer.getPending(sessionId).isEmpty()) {
+            assertTrue(System.currentTimeMillis() < deadline, "rows still pending");
+            Thread.onSpinWait();
+        }
+    }
+
+    private ChatHistory turn(String userMessage) {
+        ChatHistory turn = new ChatHistory();
+        turn.setChatBaseId(1L);
+        turn.setChatSessionId(sessionId);
+        turn.setOuterUserId("visitor");
+        turn.setUserMessage(userMessage);
+        turn.setAiResponse("reply");
+        return turn;
+    }
+}
@@ -0,0 +1,155 @@
+package ai.jamerly.tiein.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ClientRateLimiterTest {
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ClientRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new ClientRateLimiter();
+        ReflectionTestUtils.setField(limiter, "stringRedisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(limiter, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(limiter, "mode", "local");
+        ReflectionTestUtils.setField(limiter, "appPermitsPerSecond", 0.0);
+        ReflectionTestUtils.setField(limiter, "appBurst", 0);
+        ReflectionTestUtils.setField(limiter, "appMaxStreams", 3);
+        ReflectionTestUtils.setField(limiter, "userPermitsPerSecond", 10.0);
+        ReflectionTestUtils.setField(limiter, "userBurst", 2);
+        ReflectionTestUtils.setField(limiter, "userMaxStreams", 1);
+        ReflectionTestUtils.setField(limiter, "streamLeaseSeconds", 600L);
+        ReflectionTestUtils.setField(limiter, "maxKeys", 100);
+        limiter.init();
+    }
+
+    @Test
+    void bucketAllowsTheBurstThenRefills() throws InterruptedException {
+        assertTrue(limiter.tryAcquire(ClientRateLimiter.USER, "visitor"));
+        assertTrue(limiter.tryAcquire(ClientRateLimiter.USER, "visitor"));
+        assertFalse(limiter.tryAcquire(ClientRateLimiter.USER, "visitor"));
+        assertTrue(limiter.tryAcquire(ClientRateLimiter.USER, "other"));
+
+        Thread.sleep(150); // 10 permits per second
+
+        assertTrue(limiter.tryAcquire(ClientRateLimiter.USER, "visitor"));
+        assertEquals(1.0, meterRegistry.counter("chat.rate_limit.rejected", "scope", "user", "limit", "rate").count());
+    }
+
+    @Test
+    void zeroRateDisablesTheCheck() {
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire(ClientRateLimiter.APP, "app"));
+        }
+    }
+
+    @Test
+    void streamSlotsAreCountedPerVisitorAndPerApp() {
+        Runnable first = limiter.tryAcquireStream("app", "a");
+        assertNotNull(first);
+        assertNull(limiter.tryAcquireStream("app", "a")); // Visitor limit
+        assertNotNull(limiter.tryAcquireStream("app", "b"));
+        assertNotNull(limiter.tryAcquireStream("app", "c"));
+        assertNull(limiter.tryAcquireStream("app", "d")); // App limit
+
+        first.run();
+        first.run(); // Released once only
+
+        assertNotNull(limiter.tryAcquireStream("app", "a"));
+        assertNull(limiter.tryAcquireStream("app", "e"));
+    }
+
+    @Test
+    void rejectedVisitorGivesTheAppSlotBack() {
+        assertNotNull(limiter.tryAcquireStream("app", "a"));
+        for (int i = 0; i < 5; i++) {
+            assertNull(limiter.tryAcquireStream("app", "a"));
+        }
+        assertNotNull(limiter.tryAcquireStream("app", "b"));
+        assertNotNull(limiter.tryAcquireStream("app", "c"));
+    }
+
+    @Test
+    void localStreamCountersAreBounded() {
+        ReflectionTestUtils.setField(limiter, "maxKeys", 4);
+        for (int i = 0; i < 50; i++) {
+            Runnable release = limiter.tryAcquireStream("app-" + i, "visitor");
+            assertNotNull(release);
+            release.run();
+            limiter.tryAcquireStream("app-" + i, "visitor"); // Held, never released
+        }
+        Map<?, ?> streams = (Map<?, ?>) ReflectionTestUtils.getField(limiter, "streams");
+        assertTrue(streams.size() <= 4);
+    }
+
+    @Test
+    void redisLeaseIsReleasedByItsId() {
+        ReflectionTestUtils.setField(limiter, "mode", "redis");
+        when(redisTemplate.execute(eq(ClientRateLimiter.ACQUIRE_STREAM), anyList(), any(Object[].class))).thenReturn(1L);
+
+        Runnable release = limiter.tryAcquireStream("app", "a");
+        assertNotNull(release);
+        release.run();
+
+        ArgumentCaptor<Object> acquireArgs = ArgumentCaptor.forClass(Object.class);
+        verify(redisTemplate, times(2)).execute(eq(ClientRateLimiter.ACQUIRE_STREAM), anyList(), acquireArgs.capture(), acquireArgs.capture(), acquireArgs.capture());
+        List<Object> args = acquireArgs.getAllValues();
+        assertEquals("600000", args.get(1));
+        Object appLease = args.get(2);
+        Object userLease = args.get(5);
+        verify(redisTemplate).execute(eq(ClientRateLimiter.RELEASE_STREAM), eq(List.of("tiein:ratelimit:streams:app:app")), eq(appLease));
+        verify(redisTemplate).execute(eq(ClientRateLimiter.RELEASE_STREAM), eq(List.of("tiein:ratelimit:streams:user:app:a")), eq(userLease));
+    }
+
+    @Test
+    void slotGrantedLocallyDuringARedisOutageIsReleasedLocally() {
+        ReflectionTestUtils.setField(limiter, "mode", "redis");
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenThrow(new RedisConnectionFailureException("down"));
+
+        Runnable release = limiter.tryAcquireStream("app", "a");
+        assertNotNull(release);
+        assertNull(limiter.tryAcquireStream("app", "a"));
+
+        reset(redisTemplate);
+        release.run(); // Redis is back, the local counter must still be released
+
+        verify(redisTemplate, never()).execute(eq(ClientRateLimiter.RELEASE_STREAM), anyList(), any(Object[].class));
+        ReflectionTestUtils.setField(limiter, "mode", "local");
+        assertNotNull(limiter.tryAcquireStream("app", "a"));
+    }
+
+    @Test
+    void redisLeaseIsNotTakenOffTheLocalCounterWhenReleaseFails() {
+        ReflectionTestUtils.setField(limiter, "mode", "redis");
+        when(redisTemplate.execute(eq(ClientRateLimiter.ACQUIRE_STREAM), anyList(), any(Object[].class))).thenReturn(1L);
+        when(redisTemplate.execute(eq(ClientRateLimiter.RELEASE_STREAM), anyList(), any(Object[].class)))
+                .thenThrow(new RedisConnectionFailureException("down"));
+
+        // A local slot held by someone else during an earlier outage
+        ReflectionTestUtils.setField(limiter, "mode", "local");
+        assertNotNull(limiter.tryAcquireStream("app", "a"));
+        ReflectionTestUtils.setField(limiter, "mode", "redis");
+
+        limiter.tryAcquireStream("app", "a").run();
+
+        ReflectionTestUtils.setField(limiter, "mode", "local");
+        assertNull(limiter.tryAcquireStream("app", "a")); // Still held
+    }
+}
@@ -0,0 +1,124 @@
+package ai.jamerly.tiein.service;
+
+import ai.jamerly.tiein.dto.ToolExecutionResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OpenAIRequestAssemblerTest {
+
+    private final MCPToolService mcpToolService = mock(MCPToolService.class);
+    private ExecutorService executor;
+    private OpenAIRequestAssembler assembler;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(1);
+        assembler = new OpenAIRequestAssembler();
+        ReflectionTestUtils.setField(assembler, "mcpToolService", mcpToolService);
+        ReflectionTestUtils.setField(assembler, "toolCallExecutor", executor);
+        ReflectionTestUtils.setField(assembler, "toolCallTimeoutMs", 1000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void timedOutCallIsCancelledAndFreesItsSlot() throws Exception {
+        CompletableFuture<ToolExecutionResult> hung = new CompletableFuture<>();
+        when(mcpToolService.executeToolAsync(eq(1L), anyMap())).thenReturn(hung);
+        when(mcpToolService.executeToolAsync(eq(2L), anyMap())).thenReturn(CompletableFuture.completedFuture(success("ok")));
+
+        ToolExecutionResult timedOut = assembler.executeToolCall(toolCall("call_1", "tool_1")).get(5, TimeUnit.SECONDS);
+        assertFalse(timedOut.isSuccess());
+        assertEquals("Tool execution timed out.", timedOut.getErrorMessage());
+
+        // The single slot is available again
+        ToolExecutionResult next = assembler.executeToolCall(toolCall("call_2", "tool_2")).get(5, TimeUnit.SECONDS);
+        assertTrue(next.isSuccess());
+        assertEquals("ok", next.getOutput());
+        assertTrue(hung.isCancelled());
+    }
+
+    @Test
+    void deadlineCountsTimeSpentQueued() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(() -> {
+            release.await(); // Holds the only slot
+            return null;
+        });
+
+        long start = System.nanoTime();
+        ToolExecutionResult result = assembler.executeToolCall(toolCall("call_1", "tool_1")).get(5, TimeUnit.SECONDS);
+        release.countDown();
+
+        assertFalse(result.isSuccess());
+        assertEquals("Tool execution timed out.", result.getErrorMessage());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 3000);
+        verify(mcpToolService, after(200).never()).executeToolAsync(anyLong(), anyMap());
+    }
+
+    @Test
+    void asynchronousCallDoesNotHoldItsSlot() throws Exception {
+        CompletableFuture<ToolExecutionResult> pending = new CompletableFuture<>();
+        when(mcpToolService.executeToolAsync(eq(1L), anyMap())).thenReturn(pending);
+        when(mcpToolService.executeToolAsync(eq(2L), anyMap())).thenReturn(CompletableFuture.completedFuture(success("ok")));
+
+        CompletableFuture<ToolExecutionResult> first = assembler.executeToolCall(toolCall("call_1", "tool_1"));
+        // Runs on the single slot while the first call is still in flight
+        ToolExecutionResult second = assembler.executeToolCall(toolCall("call_2", "tool_2")).get(500, TimeUnit.MILLISECONDS);
+        assertEquals("ok", second.getOutput());
+
+        pending.complete(success("late"));
+        assertEquals("late", first.get(5, TimeUnit.SECONDS).getOutput());
+    }
+
+    @Test
+    void failedCallSendsErrorMessageAsContent() {
+        ToolExecutionResult failed = new ToolExecutionResult();
+        failed.setSuccess(false);
+        failed.setErrorMessage("Tool not found.");
+        when(mcpToolService.executeToolAsync(eq(1L), anyMap())).thenReturn(CompletableFuture.completedFuture(failed));
+
+        AIRequest request = new AIRequest();
+        request.setHistoricalMessages(new ArrayList<>());
+        AIRequest followUp = assembler.createFollowUpRequest(request, List.of(toolCall("call_1", "tool_1"))).block();
+
+        Map<String, Object> toolMessage = followUp.getHistoricalMessages().get(1);
+        assertEquals("call_1", toolMessage.get("tool_call_id"));
+        assertEquals(true, toolMessage.get("is_error"));
+        assertEquals("Tool not found.", toolMessage.get("content"));
+    }
+
+    private static Map<String, Object> toolCall(String id, String name) {
+        return Map.of("id", id, "function", Map.of("name", name, "arguments", "{}"));
+    }
+
+    private static ToolExecutionResult success(String output) {
+        ToolExecutionResult result = new ToolExecutionResult();
+        result.setSuccess(true);
+        result.setOutput(output);
+        return result;
+    }
+}
@@ -0,0 +1,97 @@
+package ai.jamerly.tiein.service;
+
+import ai.jamerly.tiein.entity.ChatHistory;
+import ai.jamerly.tiein.entity.ChatSession;
+import ai.jamerly.tiein.repository.ChatSessionRepository;
+import ai.jamerly.tiein.repository.MCPChatHistoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class SessionSummaryServiceTest {
+
+    private final UUID sessionId = UUID.randomUUID();
+    private final ChatSessionRepository chatSessionRepository = mock(ChatSessionRepository.class);
+    private final MCPChatHistoryRepository historyRepository = mock(MCPChatHistoryRepository.class);
+    private final ChatHistoryWriter chatHistoryWriter = mock(ChatHistoryWriter.class);
+    private SessionSummaryService service;
+    private ChatSession chatSession;
+
+    @BeforeEach
+    void setUp() {
+        service = new SessionSummaryService();
+        ReflectionTestUtils.setField(service, "chatSessionRepository", chatSessionRepository);
+        ReflectionTestUtils.setField(service, "mcpChatHistoryRepository", historyRepository);
+        ReflectionTestUtils.setField(service, "chatHistoryWriter", chatHistoryWriter);
+        ReflectionTestUtils.setField(service, "thresholdTurns", 3);
+        ReflectionTestUtils.setField(service, "keepRecentTurns", 1);
+
+        chatSession = new ChatSession();
+        chatSession.setId(sessionId);
+        chatSession.setSummary("earlier");
+        chatSession.setSummarizedUntil(new Date(1000));
+        chatSession.setSummarizedUntilId(10L);
+        when(chatSessionRepository.findById(sessionId)).thenReturn(Optional.of(chatSession));
+    }
+
+    @Test
+    void turnsSharingTheBoundaryTimestampAreSplitById() {
+        ChatHistory summarized = turn(10L, 1000, "a");
+        ChatHistory sameTimestamp = turn(11L, 1000, "b");
+        ChatHistory queued = turn(null, 1000, "c");
+        ChatHistory later = turn(12L, 2000, "d");
+
+        List<ChatHistory> turns = service.unsummarizedTurns(chatSession, List.of(summarized, sameTimestamp, queued, later));
+
+        assertEquals(List.of(sameTimestamp, queued, later), turns);
+        verifyNoInteractions(historyRepository); // The window reaches back to the summary
+    }
+
+    @Test
+    void turnsBetweenTheSummaryAndTheWindowAreAdded() {
+        ChatHistory gap = turn(11L, 1500, "gap");
+        ChatHistory first = turn(12L, 2000, "first");
+        ChatHistory second = turn(13L, 3000, "second");
+        when(historyRepository.findAfter(eq(sessionId), eq(new Date(1000)), eq(10L), eq(new Date(2000)), any(Pageable.class)))
+                .thenReturn(List.of(gap, first));
+
+        List<ChatHistory> turns = service.unsummarizedTurns(chatSession, List.of(first, second));
+
+        assertEquals(List.of(gap, first, second), turns);
+    }
+
+    @Test
+    void queuedTurnsCountTowardsTheThreshold() {
+        when(historyRepository.countAfter(sessionId, new Date(1000), 10L)).thenReturn(2L);
+        when(chatHistoryWriter.getPending(sessionId)).thenReturn(List.of(turn(null, 5000, "queued")));
+
+        service.refreshIfNeeded(sessionId);
+        verify(historyRepository, never()).findAfter(any(), any(), any(), any(), any());
+
+        when(chatHistoryWriter.getPending(sessionId)).thenReturn(List.of(turn(null, 5000, "a"), turn(null, 6000, "b")));
+        service.refreshIfNeeded(sessionId);
+        verify(historyRepository).findAfter(eq(sessionId), eq(new Date(1000)), eq(10L), isNull(), any(Pageable.class));
+    }
+
+    private ChatHistory turn(Long id, long timestamp, String message) {
+        ChatHistory turn = new ChatHistory();
+        turn.setId(id);
+        turn.setChatSessionId(sessionId);
+        turn.setTimestamp(new Date(timestamp));
+        turn.setUserMessage(message);
+        turn.setAiResponse("reply");
+        return turn;
+    }
+}
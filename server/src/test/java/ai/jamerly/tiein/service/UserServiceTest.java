@@ -0,0 +1,125 @@
+package ai.jamerly.tiein.service;
+
+import ai.jamerly.tiein.entity.User;
+import ai.jamerly.tiein.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class UserServiceTest {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final RedisMessageListenerContainer listenerContainer = mock(RedisMessageListenerContainer.class);
+    private UserService userService;
+    private MessageListener listener;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        userService = new UserService();
+        ReflectionTestUtils.setField(userService, "userRepository", userRepository);
+        ReflectionTestUtils.setField(userService, "detailsCacheSize", 10);
+        ReflectionTestUtils.setField(userService, "detailsCacheTtlSeconds", 300L);
+        ReflectionTestUtils.setField(userService, "stringRedisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(userService, "redisMessageListenerContainer", listenerContainer);
+        userService.initDetailsCache();
+        ArgumentCaptor<MessageListener> captor = ArgumentCaptor.forClass(MessageListener.class);
+        verify(listenerContainer).addMessageListener(captor.capture(), any(Topic.class));
+        listener = captor.getValue();
+
+        user = new User();
+        user.setUsername("alice");
+        user.setPassword("hash");
+        user.setRole("USER");
+        user.generateNewPermanentToken();
+        when(userRepository.findByUsername("alice")).thenReturn(Optional.of(user));
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void principalsAreCached() {
+        String token = user.getPermanentToken();
+        when(userRepository.findByPermanentToken(token)).thenReturn(Optional.of(user));
+
+        userService.loadUserByPermanentToken(token);
+        userService.loadUserByPermanentToken(token);
+        userService.loadUserByUsername("alice");
+
+        verify(userRepository, times(1)).findByPermanentToken(token);
+        verify(userRepository, never()).findByUsername("alice");
+    }
+
+    @Test
+    void regeneratedPermanentTokenRevokesTheOldOne() {
+        String oldToken = user.getPermanentToken();
+        when(userRepository.findByPermanentToken(oldToken)).thenReturn(Optional.of(user));
+        userService.loadUserByPermanentToken(oldToken);
+
+        String newToken = userService.generateNewPermanentTokenForUser("alice");
+
+        assertNotEquals(oldToken, newToken);
+        verify(redisTemplate).convertAndSend(eq(UserService.INVALIDATION_CHANNEL), eq("alice"));
+        when(userRepository.findByPermanentToken(oldToken)).thenReturn(Optional.empty());
+        assertThrows(UsernameNotFoundException.class, () -> userService.loadUserByPermanentToken(oldToken));
+    }
+
+    @Test
+    void evictionInsideATransactionWaitsForTheCommit() {
+        String oldToken = user.getPermanentToken();
+        when(userRepository.findByPermanentToken(oldToken)).thenReturn(Optional.of(user));
+        userService.loadUserByPermanentToken(oldToken);
+
+        TransactionSynchronizationManager.initSynchronization();
+        userService.generateNewPermanentTokenForUser("alice");
+
+        userService.loadUserByPermanentToken(oldToken); // Not committed yet, still cached
+        verify(userRepository, times(1)).findByPermanentToken(oldToken);
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+        when(userRepository.findByPermanentToken(oldToken)).thenReturn(Optional.empty());
+        assertThrows(UsernameNotFoundException.class, () -> userService.loadUserByPermanentToken(oldToken));
+    }
+
+    @Test
+    void invalidationFromAnotherNodeRevokesThePermanentToken() {
+        String token = user.getPermanentToken();
+        when(userRepository.findByPermanentToken(token)).thenReturn(Optional.of(user));
+        userService.loadUserByPermanentToken(token);
+
+        listener.onMessage(new DefaultMessage(UserService.INVALIDATION_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                "alice".getBytes(StandardCharsets.UTF_8)), null);
+
+        when(userRepository.findByPermanentToken(token)).thenReturn(Optional.empty());
+        assertThrows(UsernameNotFoundException.class, () -> userService.loadUserByPermanentToken(token));
+        userService.loadUserByUsername("alice");
+        verify(userRepository).findByUsername("alice");
+    }
+}